@@ -1,3 +1,4 @@
+import gg.jte.ContentType
 import org.gradle.api.tasks.testing.logging.TestExceptionFormat
 import org.gradle.api.tasks.testing.logging.TestLogEvent
 
@@ -9,6 +10,8 @@ plugins {
     id("com.github.ben-manes.versions") version "0.52.0"
     id("com.github.johnrengelman.shadow") version "8.1.1"
     id("io.freefair.lombok") version "8.13.1"
+    id("me.champeau.jmh") version "0.7.2"
+    id("gg.jte.gradle") version "3.2.0"
 }
 
 group = "hexlet.code"
@@ -24,15 +27,15 @@ dependencies {
     implementation("com.zaxxer:HikariCP:6.3.0")
     implementation("gg.jte:jte:3.2.0")
     implementation("com.konghq:unirest-java:3.14.5")
-    implementation("org.jsoup:jsoup:1.17.2")
+    implementation("org.jsoup:jsoup:1.18.3")
+    implementation("org.slf4j:slf4j-api:2.0.17")
+    runtimeOnly("org.slf4j:slf4j-simple:2.0.17")
     testImplementation("org.assertj:assertj-core:3.25.1")
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
-    testImplementation("org.slf4j:slf4j-simple:2.0.17")
     testImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
     implementation("io.javalin:javalin:6.6.0")
     implementation("io.javalin:javalin-bundle:6.6.0")
-    implementation("io.javalin:javalin-rendering:6.6.0")
 }
 
 sonar {
@@ -47,7 +50,9 @@ sonar {
 }
 
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("load")
+    }
     testLogging {
         exceptionFormat = TestExceptionFormat.FULL
         events = mutableSetOf(TestLogEvent.FAILED, TestLogEvent.PASSED, TestLogEvent.SKIPPED)
@@ -56,6 +61,20 @@ tasks.test {
     finalizedBy(tasks.jacocoTestReport)
 }
 
+tasks.register<Test>("loadTest") {
+    description = "Runs the load tests comparing platform and virtual request threads."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("load")
+    }
+    jvmArgs("-Djdk.tracePinnedThreads=short")
+    testLogging {
+        showStandardStreams = true
+    }
+}
+
 tasks.sonarqube {
     dependsOn(tasks.jacocoTestReport)
 }
@@ -73,6 +92,22 @@ jacoco {
     reportsDirectory = layout.buildDirectory.dir("customJacocoReportDir")
 }
 
+jte {
+    sourceDirectory = file("src/main/resources/templates").toPath()
+    contentType = ContentType.Html
+    binaryStaticContent = true
+    generate()
+}
+
+jmh {
+    jmhVersion = "1.37"
+    fork = 1
+    warmupIterations = 2
+    iterations = 3
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+}
+
 application {
     mainClass = "hexlet.code.App"
 }
\ No newline at end of file
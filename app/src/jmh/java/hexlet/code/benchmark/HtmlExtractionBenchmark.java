@@ -0,0 +1,66 @@
+package hexlet.code.benchmark;
+
+import hexlet.code.check.HtmlMetaExtractor;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming extraction used by checks with a full jsoup parse of the same page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HtmlExtractionBenchmark {
+    private static final long MAX_BYTES = 16 * 1024 * 1024;
+
+    @Param({"small", "medium", "large"})
+    private String fixture;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        int paragraphs = switch (fixture) {
+            case "small" -> 10;
+            case "medium" -> 2_000;
+            default -> 50_000;
+        };
+        var html = new StringBuilder()
+                .append("<!DOCTYPE html><html><head><title>Benchmark page</title>")
+                .append("<meta name=\"description\" content=\"Benchmark description\"></head><body>")
+                .append("<nav><a href=\"/\">Home</a></nav><h1>Benchmark header</h1>");
+        for (int i = 0; i < paragraphs; i++) {
+            html.append("<div class=\"item\"><p>Paragraph ").append(i)
+                    .append(" with <a href=\"/link/").append(i).append("\">a link</a></p></div>");
+        }
+        html.append("</body></html>");
+        body = html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public HtmlMetaExtractor.Result streamingExtract() throws IOException {
+        return HtmlMetaExtractor.extract(new ByteArrayInputStream(body), "text/html; charset=UTF-8", MAX_BYTES);
+    }
+
+    @Benchmark
+    public HtmlMetaExtractor.Result fullParse() {
+        var document = Jsoup.parse(new String(body, StandardCharsets.UTF_8));
+        var h1 = document.selectFirst("h1");
+        var description = document.selectFirst("meta[name=description]");
+        return new HtmlMetaExtractor.Result(document.title(),
+                h1 != null ? h1.text() : "",
+                description != null ? description.attr("content") : "");
+    }
+}
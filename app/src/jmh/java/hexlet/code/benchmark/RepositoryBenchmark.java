@@ -0,0 +1,108 @@
+package hexlet.code.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.BaseRepository;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.UrlCache;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository calls against an embedded H2 database filled with the given number of URLs,
+ * each with a few checks. The URL cache is disabled so every call reaches the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RepositoryBenchmark {
+    private static final int CHECKS_PER_URL = 5;
+
+    @Param({"100", "10000"})
+    private int urlCount;
+
+    private HikariDataSource dataSource;
+    private List<Url> urls;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        var hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl("jdbc:h2:mem:benchmark" + urlCount);
+        dataSource = new HikariDataSource(hikariConfig);
+        BaseRepository.dataSource = dataSource;
+        UrlRepository.setCache(new UrlCache(0));
+
+        try (var input = RepositoryBenchmark.class.getClassLoader().getResourceAsStream("schema.sql");
+             var conn = dataSource.getConnection();
+             var statement = conn.createStatement()) {
+            statement.execute(new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        var names = new ArrayList<String>(urlCount);
+        for (int i = 0; i < urlCount; i++) {
+            names.add("https://site" + i + ".example.com");
+            if (names.size() == 1000) {
+                UrlRepository.insertMissing(names);
+                names.clear();
+            }
+        }
+        UrlRepository.insertMissing(names);
+
+        urls = UrlRepository.getAll();
+        for (int i = 0; i < CHECKS_PER_URL; i++) {
+            var checks = new ArrayList<UrlCheck>(urls.size());
+            for (var url : urls) {
+                var check = new UrlCheck(200, "Title " + i, "Header " + i, "Description " + i);
+                check.setUrlId(url.getId());
+                checks.add(check);
+            }
+            UrlCheckRepository.saveAll(checks);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Benchmark
+    public List<Url> getAll() throws SQLException {
+        return UrlRepository.getAll();
+    }
+
+    @Benchmark
+    public Optional<Url> findById() throws SQLException {
+        return UrlRepository.findById(randomUrl().getId());
+    }
+
+    @Benchmark
+    public UrlCheck saveCheck() throws SQLException {
+        var check = new UrlCheck(200, "Title", "Header", "Description");
+        UrlRepository.saveCheck(randomUrl(), check);
+        return check;
+    }
+
+    private Url randomUrl() {
+        return urls.get(ThreadLocalRandom.current().nextInt(urls.size()));
+    }
+}
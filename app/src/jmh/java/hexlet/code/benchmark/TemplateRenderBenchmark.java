@@ -0,0 +1,104 @@
+package hexlet.code.benchmark;
+
+import gg.jte.ContentType;
+import gg.jte.TemplateEngine;
+import gg.jte.output.StringOutput;
+import gg.jte.output.Utf8ByteOutput;
+import gg.jte.resolve.ResourceCodeResolver;
+import hexlet.code.model.Page;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateRenderBenchmark {
+    @Param({"20", "100"})
+    private int rows;
+
+    private TemplateEngine templateEngine;
+    private TemplateEngine precompiledEngine;
+    private Map<String, Object> indexModel;
+    private Map<String, Object> showModel;
+
+    @Setup
+    public void setUp() {
+        var codeResolver = new ResourceCodeResolver("templates", TemplateRenderBenchmark.class.getClassLoader());
+        templateEngine = TemplateEngine.create(codeResolver, ContentType.Html);
+        precompiledEngine = TemplateEngine.createPrecompiled(ContentType.Html);
+
+        var urls = new ArrayList<Url>(rows);
+        for (int i = 1; i <= rows; i++) {
+            var url = new Url("https://site" + i + ".example.com");
+            url.setId(i);
+            url.setCreatedAt(Instant.now());
+            url.addCheck(checkOf(i));
+            urls.add(url);
+        }
+        indexModel = new HashMap<>();
+        indexModel.put("page", new Page<>(urls, null, rows));
+        indexModel.put("size", rows);
+
+        var url = new Url("https://example.com");
+        url.setId(1);
+        url.setCreatedAt(Instant.now());
+        for (int i = rows; i > 0; i--) {
+            url.getChecks().add(checkOf(i));
+        }
+        showModel = new HashMap<>();
+        showModel.put("url", url);
+        showModel.put("size", rows);
+
+        renderIndex();
+        renderShow();
+    }
+
+    @Benchmark
+    public int renderIndexPrecompiled() {
+        var output = new Utf8ByteOutput();
+        precompiledEngine.render("urls/index.jte", indexModel, output);
+        return output.getContentLength();
+    }
+
+    @Benchmark
+    public int renderShowPrecompiled() {
+        var output = new Utf8ByteOutput();
+        precompiledEngine.render("urls/show.jte", showModel, output);
+        return output.getContentLength();
+    }
+
+    @Benchmark
+    public String renderIndex() {
+        var output = new StringOutput();
+        templateEngine.render("urls/index.jte", indexModel, output);
+        return output.toString();
+    }
+
+    @Benchmark
+    public String renderShow() {
+        var output = new StringOutput();
+        templateEngine.render("urls/show.jte", showModel, output);
+        return output.toString();
+    }
+
+    private static UrlCheck checkOf(int id) {
+        var check = new UrlCheck(200, "Title " + id, "Header " + id, "Description of the page " + id);
+        check.setId(id);
+        check.setCreatedAt(Instant.now());
+        return check;
+    }
+}
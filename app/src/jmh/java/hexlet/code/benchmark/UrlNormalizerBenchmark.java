@@ -0,0 +1,30 @@
+package hexlet.code.benchmark;
+
+import hexlet.code.util.UrlNormalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UrlNormalizerBenchmark {
+    @Param({
+        "https://example.com",
+        "HTTPS://Sub.Example.COM:8443/some/long/path?query=value&other=1#fragment",
+        "not a url"
+    })
+    private String input;
+
+    @Benchmark
+    public Optional<String> normalize() {
+        return UrlNormalizer.normalize(input);
+    }
+}
@@ -3,12 +3,28 @@ package hexlet.code;
 import gg.jte.ContentType;
 import gg.jte.TemplateEngine;
 import gg.jte.resolve.ResourceCodeResolver;
+import hexlet.code.check.CheckEvents;
+import hexlet.code.check.CheckHttpClient;
+import hexlet.code.check.CheckJobQueue;
+import hexlet.code.check.CheckQueue;
+import hexlet.code.check.CheckRetention;
+import hexlet.code.check.CheckScheduler;
+import hexlet.code.check.DatabaseCheckQueue;
+import hexlet.code.check.UrlChecker;
+import hexlet.code.controller.ApiController;
+import hexlet.code.controller.MetricsController;
 import hexlet.code.controller.UrlController;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.repository.UrlCache;
+import hexlet.code.repository.UrlCheckWriteBuffer;
+import hexlet.code.repository.UrlRepository;
+import hexlet.code.util.Bulkhead;
+import hexlet.code.util.TemplateRenderer;
 import io.javalin.Javalin;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import io.javalin.http.HttpStatus;
-import io.javalin.rendering.template.JavalinJte;
+import kong.unirest.UnirestInstance;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -16,31 +32,27 @@ import java.io.InputStreamReader;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.stream.Collectors;
 
 public class App {
+    private static CheckQueue checkJobQueue;
+    private static CheckEvents checkEvents;
+    private static Bulkhead checkBulkhead;
+
     public static void main(String[] args) throws IOException {
         getApp().start(getPort());
     }
 
     private static void initializeDatabase() throws IOException {
-        var hikariConfig = new HikariConfig();
         String url = System.getenv("JDBC_DATABASE_URL");
-
         if (url == null || url.isEmpty()) {
             url = "jdbc:h2:mem:project";
-            hikariConfig.setJdbcUrl(url);
-        } else {
-            hikariConfig.setJdbcUrl(url);
-            hikariConfig.setDriverClassName("org.postgresql.Driver");
-
-            hikariConfig.setMaximumPoolSize(10);
-            hikariConfig.setMinimumIdle(2);
-            hikariConfig.setIdleTimeout(60000);
-            hikariConfig.setConnectionTimeout(30000);
         }
+        String readUrl = System.getenv("JDBC_DATABASE_READ_URL");
+        boolean replica = readUrl != null && !readUrl.isEmpty();
 
-        var dataSource = new HikariDataSource(hikariConfig);
+        var dataSource = createDataSource("db", url, "DB_WRITER", 30_000, false);
         var sql = readResourceFile("schema.sql");
 
         try (var connection = dataSource.getConnection();
@@ -50,14 +62,94 @@ public class App {
             throw new RuntimeException(e);
         }
         BaseRepository.dataSource = dataSource;
+        BaseRepository.readDataSource = createDataSource("db-reader", replica ? readUrl : url, "DB_READER", 5_000,
+                true);
+        BaseRepository.readFromReplica = replica;
+    }
+
+    /**
+     * Creates a connection pool whose size and timeouts are read from variables with the given prefix,
+     * e.g. {@code DB_READER_POOL_SIZE}.
+     */
+    private static HikariDataSource createDataSource(String poolName, String url, String envPrefix,
+                                                     int defaultConnectionTimeoutMillis, boolean readOnly) {
+        var hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(url);
+        if (url.startsWith("jdbc:postgresql:")) {
+            hikariConfig.setDriverClassName("org.postgresql.Driver");
+        }
+
+        hikariConfig.setMaximumPoolSize(getEnvInt(envPrefix + "_POOL_SIZE", 10));
+        hikariConfig.setMinimumIdle(getEnvInt(envPrefix + "_MIN_IDLE", 2));
+        hikariConfig.setIdleTimeout(getEnvInt(envPrefix + "_IDLE_TIMEOUT_MILLIS", 60_000));
+        hikariConfig.setConnectionTimeout(getEnvInt(envPrefix + "_CONNECTION_TIMEOUT_MILLIS",
+                defaultConnectionTimeoutMillis));
+        hikariConfig.setReadOnly(readOnly);
+
+        hikariConfig.setPoolName(poolName);
+        hikariConfig.setMetricsTrackerFactory(Metrics.poolTrackerFactory());
+        return new HikariDataSource(hikariConfig);
     }
 
     public static Javalin getApp() throws IOException {
+        return getApp("true".equals(System.getenv("VIRTUAL_THREADS")));
+    }
+
+    /**
+     * Creates the application.
+     *
+     * @param virtualThreads run request handlers on virtual threads instead of Jetty's bounded pool
+     *                       of platform threads, so requests blocked on JDBC or outbound fetches
+     *                       do not hold one of the pool's threads each
+     * @return the configured, not yet started application
+     */
+    public static Javalin getApp(boolean virtualThreads) throws IOException {
+        // Before connecting to the database: the JVM fixes its DNS cache policy at the first lookup
+        CheckHttpClient.setDnsCacheTtl(Duration.ofSeconds(getEnvInt("CHECK_DNS_CACHE_SECONDS", 60)));
         initializeDatabase();
+        var dataSource = BaseRepository.dataSource;
+        var readDataSource = BaseRepository.readDataSource;
+        TemplateRenderer.setTemplateEngine(createTemplateEngine());
+        UrlChecker.setMaxBodyBytes(getEnvInt("CHECK_MAX_BODY_BYTES", 1024 * 1024));
+        UrlChecker.setTotalTimeout(Duration.ofMillis(getEnvInt("CHECK_TOTAL_TIMEOUT_MILLIS", 30_000)));
+        var httpClient = CheckHttpClient.create(
+                Duration.ofMillis(getEnvInt("CHECK_CONNECT_TIMEOUT_MILLIS", 5_000)),
+                Duration.ofMillis(getEnvInt("CHECK_READ_TIMEOUT_MILLIS", 10_000)),
+                getEnvInt("CHECK_MAX_CONNECTIONS", 200),
+                getEnvInt("CHECK_MAX_CONNECTIONS_PER_HOST", 4));
+        UrlChecker.setHttpClient(httpClient);
+        UrlRepository.setCache(new UrlCache(getEnvInt("URL_CACHE_SIZE", 10_000)));
+
+        var writeBuffer = new UrlCheckWriteBuffer(getEnvInt("CHECK_WRITE_BATCH_SIZE", 50),
+                Duration.ofMillis(getEnvInt("CHECK_WRITE_FLUSH_MILLIS", 100)));
+        checkEvents = new CheckEvents();
+        var queue = createCheckQueue(writeBuffer, checkEvents);
+        checkJobQueue = queue;
+        var scheduler = createCheckScheduler(queue);
+        var retention = createCheckRetention();
+        checkBulkhead = new Bulkhead(getEnvInt("CHECK_REQUEST_CONCURRENCY", 16),
+                getEnvInt("CHECK_REQUEST_QUEUE_DEPTH", 32),
+                Duration.ofMillis(getEnvInt("CHECK_REQUEST_MAX_WAIT_MILLIS", 500)),
+                getEnvInt("CHECK_RETRY_AFTER_SECONDS", 5));
+        registerGauges(queue, httpClient, checkBulkhead);
 
         var app = Javalin.create(config -> {
+            config.useVirtualThreads = virtualThreads;
             config.bundledPlugins.enableDevLogging();
-            config.fileRenderer(new JavalinJte(createTemplateEngine()));
+            config.events.serverStopping(queue::shutdown);
+            config.events.serverStopping(writeBuffer::shutdown);
+            config.events.serverStopped(httpClient::shutDown);
+            // After the queue and the write buffer have stopped, so their last writes still get a connection
+            config.events.serverStopped(readDataSource::close);
+            config.events.serverStopped(dataSource::close);
+            if (scheduler != null) {
+                config.events.serverStarted(scheduler::start);
+                config.events.serverStopping(scheduler::shutdown);
+            }
+            if (retention != null) {
+                config.events.serverStarted(retention::start);
+                config.events.serverStopping(retention::shutdown);
+            }
         });
 
         app.exception(Exception.class, (e, ctx) -> {
@@ -91,20 +183,111 @@ public class App {
             ctx.redirect("/");
         });
 
-        app.get("/", UrlController::handleRootRoute);
-        app.post("/urls", UrlController::handleUrlCreation);
-        app.get("/urls", UrlController::handleUrlsListing);
-        app.get("/urls/{id}", UrlController::handleSingleUrlView);
-        app.post("/urls/{id}/checks", UrlController::handleUrlCheck);
+        app.get("/", Metrics.timed("GET", "/", UrlController::handleRootRoute));
+        app.post("/urls", Metrics.timed("POST", "/urls", UrlController::handleUrlCreation));
+        app.post("/urls/import", Metrics.timed("POST", "/urls/import", UrlController::handleUrlImport));
+        app.get("/urls", Metrics.timed("GET", "/urls", UrlController::handleUrlsListing));
+        app.get("/urls/{id}", Metrics.timed("GET", "/urls/{id}", UrlController::handleSingleUrlView));
+        app.post("/urls/{id}/checks", Metrics.timed("POST", "/urls/{id}/checks",
+                checkBulkhead.wrap(UrlController::handleUrlCheck, UrlController::handleCheckRejected)));
+        app.before("/urls/{id}/events", Metrics::markStart);
+        app.sse("/urls/{id}/events", Metrics.timedSse("/urls/{id}/events", UrlController::handleCheckEvents));
+        app.get("/checks/jobs/{jobId}",
+                Metrics.timed("GET", "/checks/jobs/{jobId}", UrlController::handleCheckJobStatus));
+        app.get("/api/urls", Metrics.timed("GET", "/api/urls", ApiController::handleUrls));
+        app.get("/api/urls/{id}/checks",
+                Metrics.timed("GET", "/api/urls/{id}/checks", ApiController::handleUrlChecks));
+        app.get("/api/urls/{id}/history",
+                Metrics.timed("GET", "/api/urls/{id}/history", ApiController::handleUrlHistory));
+        app.get("/metrics", Metrics.timed("GET", "/metrics", MetricsController::handleMetrics));
 
         return app;
     }
 
+    public static CheckQueue getCheckJobQueue() {
+        return checkJobQueue;
+    }
+
+    public static CheckEvents getCheckEvents() {
+        return checkEvents;
+    }
+
+    public static Bulkhead getCheckBulkhead() {
+        return checkBulkhead;
+    }
+
+    private static void registerGauges(CheckQueue queue, UnirestInstance httpClient, Bulkhead bulkhead) {
+        Metrics.registerGauge("check_queue_size", "Checks waiting for a worker", "gauge", queue::size);
+        Metrics.registerGauge("check_requests_active", "Check requests being handled", "gauge", bulkhead::getActive);
+        Metrics.registerGauge("check_requests_waiting", "Check requests waiting to be handled", "gauge",
+                bulkhead::getWaiting);
+        Metrics.registerGauge("check_requests_limit", "Check requests that may be handled at once", "gauge",
+                bulkhead::getMaxConcurrent);
+        Metrics.registerGauge("check_requests_rejected_total", "Check requests answered with 429", "counter",
+                bulkhead::getRejected);
+        Metrics.registerGauge("check_http_connections_leased", "Check client connections in use", "gauge",
+                () -> CheckHttpClient.connectionStats(httpClient).getLeased());
+        Metrics.registerGauge("check_http_connections_available", "Idle keep-alive connections of the check client",
+                "gauge", () -> CheckHttpClient.connectionStats(httpClient).getAvailable());
+        Metrics.registerGauge("check_http_connections_pending", "Checks waiting for a connection", "gauge",
+                () -> CheckHttpClient.connectionStats(httpClient).getPending());
+        Metrics.registerGauge("url_cache_size", "URLs held in the cache", "gauge",
+                () -> UrlRepository.getCacheStats().size());
+        Metrics.registerGauge("url_cache_hits_total", "URL cache hits", "counter",
+                () -> UrlRepository.getCacheStats().hits());
+        Metrics.registerGauge("url_cache_misses_total", "URL cache misses", "counter",
+                () -> UrlRepository.getCacheStats().misses());
+        Metrics.registerGauge("url_cache_evictions_total", "URL cache evictions", "counter",
+                () -> UrlRepository.getCacheStats().evictions());
+    }
+
+    private static CheckQueue createCheckQueue(UrlCheckWriteBuffer writeBuffer, CheckEvents events) {
+        int capacity = getEnvInt("CHECK_QUEUE_CAPACITY", 100);
+        int workers = getEnvInt("CHECK_WORKERS", 8);
+        if ("database".equals(System.getenv("CHECK_QUEUE"))) {
+            return new DatabaseCheckQueue(capacity, workers,
+                    getEnvInt("CHECK_QUEUE_MAX_ATTEMPTS", 3),
+                    Duration.ofSeconds(getEnvInt("CHECK_QUEUE_LEASE_SECONDS", 120)),
+                    Duration.ofSeconds(getEnvInt("CHECK_QUEUE_BACKOFF_SECONDS", 10)),
+                    writeBuffer, events);
+        }
+        return new CheckJobQueue(capacity, workers, writeBuffer, events);
+    }
+
+    private static CheckScheduler createCheckScheduler(CheckQueue queue) {
+        int intervalMinutes = getEnvInt("CHECK_SCHEDULE_INTERVAL_MINUTES", 0);
+        if (intervalMinutes <= 0) {
+            return null;
+        }
+        var interval = Duration.ofMinutes(intervalMinutes);
+        var cycleTimeout = Duration.ofMinutes(getEnvInt("CHECK_SCHEDULE_CYCLE_TIMEOUT_MINUTES", intervalMinutes));
+        int batchSize = getEnvInt("CHECK_SCHEDULE_BATCH_SIZE", 500);
+        if (queue instanceof DatabaseCheckQueue databaseQueue) {
+            return new CheckScheduler(interval, cycleTimeout, batchSize, databaseQueue);
+        }
+        return new CheckScheduler(interval, cycleTimeout, batchSize, getEnvInt("CHECK_SCHEDULE_CONCURRENCY", 16));
+    }
+
+    private static CheckRetention createCheckRetention() {
+        int retentionDays = getEnvInt("CHECK_RETENTION_DAYS", 90);
+        if (retentionDays <= 0) {
+            return null;
+        }
+        return new CheckRetention(Duration.ofDays(retentionDays),
+                Duration.ofMinutes(getEnvInt("CHECK_RETENTION_INTERVAL_MINUTES", 60)),
+                getEnvInt("CHECK_RETENTION_BATCH_SIZE", 500));
+    }
+
     private static int getPort() {
         String port = System.getenv().getOrDefault("PORT", "7070");
         return Integer.parseInt(port);
     }
 
+    private static int getEnvInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
     private static String readResourceFile(String fileName) throws IOException {
         var inputStream = App.class.getClassLoader().getResourceAsStream(fileName);
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
@@ -112,10 +295,18 @@ public class App {
         }
     }
 
+    private static boolean isDevelopment() {
+        return "development".equals(System.getenv("APP_ENV"));
+    }
+
     private static TemplateEngine createTemplateEngine() {
+        if (!isDevelopment()) {
+            return TemplateEngine.createPrecompiled(ContentType.Html);
+        }
         ClassLoader classLoader = App.class.getClassLoader();
         ResourceCodeResolver codeResolver = new ResourceCodeResolver("templates", classLoader);
         TemplateEngine templateEngine = TemplateEngine.create(codeResolver, ContentType.Html);
+        templateEngine.setBinaryStaticContent(true);
         return templateEngine;
     }
 }
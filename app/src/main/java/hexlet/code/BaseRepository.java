@@ -1,7 +1,80 @@
 package hexlet.code;
 
 import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Optional;
 
 public class BaseRepository {
+    private static final Logger LOG = LoggerFactory.getLogger(BaseRepository.class);
+
+    /**
+     * Rows fetched per round trip by streamed queries.
+     */
+    protected static final int STREAM_FETCH_SIZE = 1000;
+
+    /**
+     * Pool of the primary database, used for writes and for reads that must see them.
+     */
     public static HikariDataSource dataSource;
+
+    /**
+     * Pool for read-only queries. It may point at a replica, otherwise it is a separate pool
+     * on the primary that keeps heavy listings from taking connections away from writes.
+     */
+    public static HikariDataSource readDataSource;
+
+    /**
+     * Whether the reader pool points at a replica that may lag behind the primary.
+     */
+    public static boolean readFromReplica;
+
+    @FunctionalInterface
+    protected interface Lookup<T> {
+        Optional<T> find(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Returns a connection for read-only queries, from the writer pool when the reader pool is not
+     * configured or cannot hand out a connection.
+     */
+    protected static Connection getReadConnection() throws SQLException {
+        var reader = readDataSource;
+        if (reader == null) {
+            return dataSource.getConnection();
+        }
+        try {
+            return reader.getConnection();
+        } catch (SQLException e) {
+            LOG.warn("Reader pool unavailable, reading from the writer: {}", e.getMessage());
+            return dataSource.getConnection();
+        }
+    }
+
+    /**
+     * Runs a lookup on a reader connection and repeats it on the writer if nothing was found
+     * on a replica, so a row written a moment ago is found before the replica receives it.
+     */
+    protected static <T> Optional<T> findOnReader(Lookup<T> lookup) throws SQLException {
+        try (var conn = getReadConnection()) {
+            var result = lookup.find(conn);
+            if (result.isPresent() || !readFromReplica) {
+                return result;
+            }
+        }
+        try (var conn = dataSource.getConnection()) {
+            return lookup.find(conn);
+        }
+    }
+
+    /**
+     * Tells whether the connection goes to PostgreSQL rather than the embedded H2 database,
+     * for the few statements whose syntax differs between the two.
+     */
+    protected static boolean isPostgres(Connection conn) throws SQLException {
+        return "PostgreSQL".equals(conn.getMetaData().getDatabaseProductName());
+    }
 }
@@ -0,0 +1,118 @@
+package hexlet.code.check;
+
+import hexlet.code.model.CheckJob;
+import hexlet.code.model.UrlCheck;
+import io.javalin.http.sse.SseClient;
+
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes the progress of URL checks to the pages watching that URL over Server-Sent Events.
+ * Events are {@code check-started}, {@code check-completed} with the saved check, and {@code check-failed}.
+ */
+public class CheckEvents {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    private record Event(String name, Object data) {
+    }
+
+    /**
+     * Queues events for one client and writes them on a virtual thread, so a slow client neither
+     * blocks the check workers nor receives its events out of order.
+     */
+    private static final class Subscriber {
+        private final SseClient client;
+        private final Queue<Event> outbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        Subscriber(SseClient client) {
+            this.client = client;
+        }
+
+        void send(Event event) {
+            outbox.add(event);
+            if (draining.compareAndSet(false, true)) {
+                Thread.startVirtualThread(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                Event event;
+                while ((event = outbox.poll()) != null) {
+                    client.sendEvent(event.name(), event.data());
+                }
+                draining.set(false);
+            } while (!outbox.isEmpty() && draining.compareAndSet(false, true));
+        }
+    }
+
+    private final Map<Integer, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * Keeps the client connected and sends it the events of the URL's checks until it disconnects.
+     */
+    public void subscribe(int urlId, SseClient client) {
+        var subscriber = new Subscriber(client);
+        subscribers.computeIfAbsent(urlId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        client.onClose(() -> unsubscribe(urlId, subscriber));
+        client.keepAlive();
+    }
+
+    public int subscriberCount() {
+        return subscribers.values().stream().mapToInt(Set::size).sum();
+    }
+
+    public void checkStarted(CheckJob job) {
+        publish(job.getUrlId(), "check-started", Map.of("jobId", job.getId()));
+    }
+
+    public void checkCompleted(CheckJob job, UrlCheck check) {
+        var data = new HashMap<String, Object>();
+        data.put("jobId", job.getId());
+        data.put("id", check.getId());
+        data.put("statusCode", check.getStatusCode());
+        data.put("title", check.getTitle());
+        data.put("h1", check.getH1());
+        data.put("description", check.getDescription());
+        data.put("createdAt", DATE_FORMAT.format(check.getCreatedAt()));
+        publish(job.getUrlId(), "check-completed", data);
+    }
+
+    public void checkFailed(CheckJob job, String error) {
+        var data = new HashMap<String, Object>();
+        data.put("jobId", job.getId());
+        data.put("error", error);
+        publish(job.getUrlId(), "check-failed", data);
+    }
+
+    private void publish(int urlId, String event, Object data) {
+        var watchers = subscribers.get(urlId);
+        if (watchers == null) {
+            return;
+        }
+        for (var subscriber : watchers) {
+            if (subscriber.client.terminated()) {
+                unsubscribe(urlId, subscriber);
+            } else {
+                subscriber.send(new Event(event, data));
+            }
+        }
+    }
+
+    private void unsubscribe(int urlId, Subscriber subscriber) {
+        subscribers.computeIfPresent(urlId, (id, watchers) -> {
+            watchers.remove(subscriber);
+            return watchers.isEmpty() ? null : watchers;
+        });
+    }
+}
@@ -0,0 +1,43 @@
+package hexlet.code.check;
+
+import kong.unirest.Unirest;
+import kong.unirest.UnirestInstance;
+import kong.unirest.apache.ApacheClient;
+import org.apache.http.pool.PoolStats;
+
+import java.security.Security;
+import java.time.Duration;
+
+/**
+ * Builds the HTTP client used for page checks. It is separate from the global {@link Unirest} instance,
+ * so checks get their own keep-alive connection pool with a per-host limit, explicit timeouts and
+ * compressed responses, and bulk checks of one host reuse connections instead of handshaking each time.
+ */
+public class CheckHttpClient {
+
+    public static UnirestInstance create(Duration connectTimeout, Duration readTimeout, int maxConnections,
+                                         int maxConnectionsPerHost) {
+        var client = Unirest.spawnInstance();
+        client.config()
+                .connectTimeout((int) connectTimeout.toMillis())
+                .socketTimeout((int) readTimeout.toMillis())
+                .concurrency(maxConnections, maxConnectionsPerHost)
+                .automaticRetries(false)
+                .followRedirects(true)
+                .setDefaultHeader("Accept", "text/html,application/xhtml+xml;q=0.9,*/*;q=0.1")
+                .setDefaultHeader("Accept-Encoding", "gzip, deflate");
+        return client;
+    }
+
+    /**
+     * Sets how long successful DNS lookups are cached by the JVM. Must be called before the first lookup
+     * of the process, the database connection included, since the JVM reads the setting only once.
+     */
+    public static void setDnsCacheTtl(Duration ttl) {
+        Security.setProperty("networkaddress.cache.ttl", String.valueOf(ttl.toSeconds()));
+    }
+
+    public static PoolStats connectionStats(UnirestInstance client) {
+        return ((ApacheClient) client.config().getClient()).getManager().getTotalStats();
+    }
+}
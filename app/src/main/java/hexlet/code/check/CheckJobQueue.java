@@ -0,0 +1,145 @@
+package hexlet.code.check;
+
+import hexlet.code.model.CheckJob;
+import hexlet.code.model.Url;
+import hexlet.code.repository.UrlCheckWriteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded in-process queue of URL checks for a single instance. Jobs are accepted without blocking
+ * the caller and executed by a fixed number of workers running on virtual threads. Results are saved
+ * through a shared write buffer, so checks finishing together are inserted in one batch.
+ * Progress is published to the pages watching the checked URL.
+ */
+public class CheckJobQueue implements CheckQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(CheckJobQueue.class);
+    private static final long POLL_TIMEOUT_MILLIS = 500;
+
+    private final BlockingQueue<CheckJob> queue;
+    private final UrlCheckWriteBuffer writeBuffer;
+    private final CheckEvents events;
+    private final Map<String, CheckJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final int maxTrackedJobs;
+    private final ExecutorService workers;
+    private volatile boolean running = true;
+
+    public CheckJobQueue(int capacity, int workerCount, UrlCheckWriteBuffer writeBuffer, CheckEvents events) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writeBuffer = writeBuffer;
+        this.events = events;
+        this.maxTrackedJobs = capacity * 4;
+        this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("check-worker-", 0).factory());
+        for (int i = 0; i < workerCount; i++) {
+            workers.submit(this::workLoop);
+        }
+    }
+
+    @Override
+    public Optional<CheckJob> submit(Url url) {
+        evictFinishedJobs();
+
+        var job = new CheckJob(UUID.randomUUID().toString(), url);
+        jobs.put(job.getId(), job);
+        pending.incrementAndGet();
+
+        if (!running || !queue.offer(job)) {
+            jobs.remove(job.getId());
+            pending.decrementAndGet();
+            return Optional.empty();
+        }
+        return Optional.of(job);
+    }
+
+    @Override
+    public Optional<CheckJob> findJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (pending.get() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        workers.shutdownNow();
+    }
+
+    private void workLoop() {
+        while (running) {
+            CheckJob job;
+            try {
+                job = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (job != null) {
+                execute(job);
+            }
+        }
+    }
+
+    private void execute(CheckJob job) {
+        job.markRunning();
+        events.checkStarted(job);
+        try {
+            var url = new Url(job.getUrlName());
+            url.setId(job.getUrlId());
+
+            var urlCheck = UrlChecker.check(url);
+            writeBuffer.add(urlCheck).whenComplete((saved, error) -> {
+                if (error != null) {
+                    fail(job, error);
+                } else {
+                    job.markDone(saved);
+                    pending.decrementAndGet();
+                    events.checkCompleted(job, saved);
+                }
+            });
+        } catch (Exception e) {
+            fail(job, e);
+        }
+    }
+
+    private void fail(CheckJob job, Throwable error) {
+        LOG.warn("Check of {} failed: {}", job.getUrlName(), error.getMessage());
+        job.markFailed(error.getMessage());
+        pending.decrementAndGet();
+        events.checkFailed(job, error.getMessage());
+    }
+
+    private void evictFinishedJobs() {
+        if (jobs.size() < maxTrackedJobs) {
+            return;
+        }
+        jobs.values().removeIf(CheckJob::isFinished);
+    }
+}
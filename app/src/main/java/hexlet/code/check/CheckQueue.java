@@ -0,0 +1,39 @@
+package hexlet.code.check;
+
+import hexlet.code.model.CheckJob;
+import hexlet.code.model.Url;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Queue of URL checks run in the background. Implementations decide where jobs are kept
+ * and which workers run them.
+ */
+public interface CheckQueue {
+    /**
+     * Puts a check of the given URL on the queue.
+     *
+     * @param url the URL to check
+     * @return the queued job, or an empty optional if the queue is full
+     */
+    Optional<CheckJob> submit(Url url) throws SQLException;
+
+    Optional<CheckJob> findJob(String jobId) throws SQLException;
+
+    /**
+     * Returns the number of jobs waiting for a worker.
+     */
+    int size();
+
+    /**
+     * Waits until every accepted job has finished.
+     *
+     * @param timeout the maximum time to wait
+     * @return true if the queue became idle before the timeout elapsed
+     */
+    boolean awaitIdle(Duration timeout) throws InterruptedException;
+
+    void shutdown();
+}
@@ -0,0 +1,77 @@
+package hexlet.code.check;
+
+import hexlet.code.repository.CheckRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically compacts raw checks older than the retention window into per-URL daily rollups.
+ * Work is done in small batches, each in its own short transaction, so the check table is never
+ * locked for long and a run can be interrupted at any point without losing data.
+ */
+public class CheckRetention {
+    private static final Logger LOG = LoggerFactory.getLogger(CheckRetention.class);
+
+    private final Duration retention;
+    private final Duration interval;
+    private final int batchSize;
+    private final ScheduledExecutorService timer;
+    private volatile boolean running = true;
+
+    public CheckRetention(Duration retention, Duration interval, int batchSize) {
+        this.retention = retention;
+        this.interval = interval;
+        this.batchSize = batchSize;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "check-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        timer.scheduleWithFixedDelay(this::runSafely, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        running = false;
+        timer.shutdownNow();
+    }
+
+    /**
+     * Compacts every raw check made before the start of the UTC day that falls out of the retention
+     * window, so that whole days are rolled up at once.
+     *
+     * @return the number of raw checks compacted
+     */
+    public int run() throws SQLException {
+        var cutoff = Instant.now().minus(retention).atOffset(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).toInstant();
+        int compacted = 0;
+        int batch;
+        do {
+            batch = CheckRollupRepository.compactBatch(cutoff, batchSize);
+            compacted += batch;
+        } while (batch > 0 && running);
+        return compacted;
+    }
+
+    private void runSafely() {
+        try {
+            int compacted = run();
+            if (compacted > 0) {
+                LOG.info("Compacted {} checks into daily rollups", compacted);
+            }
+        } catch (Exception e) {
+            LOG.warn("Check retention run failed", e);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package hexlet.code.check;
+
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically re-checks every registered URL. URLs are read in keyset-ordered batches,
+ * checked with a bounded number of concurrent fetches and written back in bulk, so a cycle
+ * holds at most one batch in memory regardless of the size of the table. With the database
+ * check queue, URLs are queued instead of checked, and the workers of all instances run the checks.
+ */
+public class CheckScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(CheckScheduler.class);
+    private static final long QUEUE_FULL_PAUSE_MILLIS = 1000;
+
+    private final Duration interval;
+    private final Duration cycleTimeout;
+    private final int batchSize;
+    private final Semaphore permits;
+    private final DatabaseCheckQueue queue;
+    private final ScheduledExecutorService timer;
+
+    public CheckScheduler(Duration interval, Duration cycleTimeout, int batchSize, int concurrency) {
+        this(interval, cycleTimeout, batchSize, new Semaphore(concurrency), null);
+    }
+
+    /**
+     * Creates a scheduler that puts the URLs on the shared queue. A URL that has a pending job,
+     * or one created during the last half interval, is skipped, so instances running the scheduler
+     * at the same time queue each URL once.
+     */
+    public CheckScheduler(Duration interval, Duration cycleTimeout, int batchSize, DatabaseCheckQueue queue) {
+        this(interval, cycleTimeout, batchSize, null, queue);
+    }
+
+    private CheckScheduler(Duration interval, Duration cycleTimeout, int batchSize, Semaphore permits,
+                           DatabaseCheckQueue queue) {
+        this.interval = interval;
+        this.cycleTimeout = cycleTimeout;
+        this.batchSize = batchSize;
+        this.permits = permits;
+        this.queue = queue;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "check-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        timer.scheduleWithFixedDelay(this::runCycleSafely, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Checks or queues all URLs once. Batches that would start after the cycle timeout are skipped,
+     * and checks still running when it elapses are cancelled.
+     *
+     * @return the number of checks saved or queued during the cycle
+     */
+    public int runCycle() throws SQLException, InterruptedException {
+        return queue != null ? queueCycle() : checkCycle();
+    }
+
+    private int checkCycle() throws SQLException, InterruptedException {
+        long deadline = System.nanoTime() + cycleTimeout.toNanos();
+        int lastId = 0;
+        int saved = 0;
+
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            while (System.nanoTime() < deadline) {
+                List<Url> batch = UrlRepository.findBatchAfter(lastId, batchSize);
+                if (batch.isEmpty()) {
+                    return saved;
+                }
+                lastId = batch.get(batch.size() - 1).getId();
+
+                var results = new ConcurrentLinkedQueue<UrlCheck>();
+                List<Callable<Void>> tasks = new ArrayList<>(batch.size());
+                for (var url : batch) {
+                    tasks.add(() -> {
+                        checkInto(url, results);
+                        return null;
+                    });
+                }
+                executor.invokeAll(tasks, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                var checks = new ArrayList<>(results);
+                long persistStart = System.nanoTime();
+                UrlCheckRepository.saveAll(checks);
+                Metrics.recordCheckPersist(System.nanoTime() - persistStart);
+                saved += checks.size();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.warn("Scheduled check cycle timed out after {} checks", saved);
+        return saved;
+    }
+
+    /**
+     * Queues the URLs batch by batch. While the scheduled share of the queue is full, the cycle waits
+     * for the workers to make room, so the queue is filled at the pace the checks are made.
+     */
+    private int queueCycle() throws SQLException, InterruptedException {
+        long deadline = System.nanoTime() + cycleTimeout.toNanos();
+        var dueSince = Instant.now().minus(interval.dividedBy(2));
+        int lastId = 0;
+        int queued = 0;
+
+        while (true) {
+            List<Url> batch = UrlRepository.findBatchAfter(lastId, batchSize);
+            if (batch.isEmpty()) {
+                return queued;
+            }
+            lastId = batch.get(batch.size() - 1).getId();
+
+            for (var url : batch) {
+                var job = queue.submitScheduled(url, dueSince);
+                while (job.isEmpty() && queue.isFullForScheduled()) {
+                    if (System.nanoTime() >= deadline) {
+                        LOG.warn("Scheduled check cycle timed out after queueing {} checks", queued);
+                        return queued;
+                    }
+                    Thread.sleep(QUEUE_FULL_PAUSE_MILLIS);
+                    job = queue.submitScheduled(url, dueSince);
+                }
+                if (job.isPresent()) {
+                    queued++;
+                }
+            }
+        }
+    }
+
+    private void checkInto(Url url, ConcurrentLinkedQueue<UrlCheck> results) throws InterruptedException {
+        permits.acquire();
+        try {
+            var urlCheck = UrlChecker.check(url);
+            urlCheck.setCreatedAt(Instant.now());
+            results.add(urlCheck);
+        } catch (Exception e) {
+            LOG.warn("Scheduled check of {} failed: {}", url.getName(), e.getMessage());
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void runCycleSafely() {
+        try {
+            runCycle();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOG.warn("Scheduled check cycle failed", e);
+        }
+    }
+}
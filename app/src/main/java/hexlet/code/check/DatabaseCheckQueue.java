@@ -0,0 +1,272 @@
+package hexlet.code.check;
+
+import hexlet.code.model.CheckJob;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.CheckJobRepository;
+import hexlet.code.repository.UrlCheckWriteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Queue of URL checks kept in the {@code check_jobs} table, shared by every instance of the application.
+ * Each instance runs one dispatcher that claims as many due jobs as it has idle workers, so adding
+ * instances adds workers without any broker in between. Claims are leased: the jobs of an instance
+ * that dies are claimed again once their lease expires. Failed checks are retried with exponential
+ * backoff, and jobs that fail every attempt stay in the table as {@code FAILED} for a week.
+ * The capacity bounds the jobs each instance has queued, so submissions are serialized only within
+ * an instance. Scheduled re-checks may fill only half of it, so checks requested from the page still find room.
+ */
+public class DatabaseCheckQueue implements CheckQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(DatabaseCheckQueue.class);
+    private static final long POLL_TIMEOUT_MILLIS = 500;
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(30);
+    private static final Duration MAINTENANCE_INTERVAL = Duration.ofMinutes(1);
+    private static final Duration DONE_RETENTION = Duration.ofDays(1);
+    private static final Duration FAILED_RETENTION = Duration.ofDays(7);
+    private static final long SIZE_REFRESH_NANOS = 1_000_000_000L;
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ReentrantLock submitLock = new ReentrantLock();
+    private final int capacity;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final Duration backoff;
+    private final UrlCheckWriteBuffer writeBuffer;
+    private final CheckEvents events;
+    private final Semaphore idleWorkers;
+    private final ExecutorService workers;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+    private long nextMaintenance;
+    private volatile int cachedSize;
+    private volatile long sizeCountedAt;
+
+    public DatabaseCheckQueue(int capacity, int workerCount, int maxAttempts, Duration lease, Duration backoff,
+                              UrlCheckWriteBuffer writeBuffer, CheckEvents events) {
+        this.capacity = capacity;
+        this.maxAttempts = maxAttempts;
+        this.lease = lease;
+        this.backoff = backoff;
+        this.writeBuffer = writeBuffer;
+        this.events = events;
+        this.idleWorkers = new Semaphore(workerCount);
+        this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("check-worker-", 0).factory());
+        this.nextMaintenance = System.nanoTime();
+        this.sizeCountedAt = System.nanoTime() - SIZE_REFRESH_NANOS;
+        this.dispatcher = Thread.ofVirtual().name("check-dispatcher").start(this::dispatchLoop);
+    }
+
+    @Override
+    public Optional<CheckJob> submit(Url url) throws SQLException {
+        var job = new CheckJob(UUID.randomUUID().toString(), url);
+        if (!running) {
+            return Optional.empty();
+        }
+        submitLock.lock();
+        try {
+            if (!CheckJobRepository.insert(job, instanceId, capacity)) {
+                return Optional.empty();
+            }
+        } finally {
+            submitLock.unlock();
+        }
+        LockSupport.unpark(dispatcher);
+        return Optional.of(job);
+    }
+
+    /**
+     * Queues a scheduled check of the URL unless it has a pending job or one created since the given
+     * moment, on any instance.
+     *
+     * @return the queued job, or an empty optional if the URL is already covered or the share
+     *         of the queue left to scheduled checks is full
+     */
+    public Optional<CheckJob> submitScheduled(Url url, Instant dueSince) throws SQLException {
+        var job = new CheckJob(UUID.randomUUID().toString(), url);
+        if (!running) {
+            return Optional.empty();
+        }
+        submitLock.lock();
+        try {
+            if (!CheckJobRepository.insertIfDue(job, instanceId, scheduledCapacity(), dueSince)) {
+                return Optional.empty();
+            }
+        } finally {
+            submitLock.unlock();
+        }
+        LockSupport.unpark(dispatcher);
+        return Optional.of(job);
+    }
+
+    public boolean isFullForScheduled() throws SQLException {
+        return CheckJobRepository.countQueuedBy(instanceId) >= scheduledCapacity();
+    }
+
+    @Override
+    public Optional<CheckJob> findJob(String jobId) throws SQLException {
+        return CheckJobRepository.findById(jobId);
+    }
+
+    /**
+     * Returns the number of queued jobs on all instances, counted at most once a second.
+     * Returns -1 if the count failed, so a database hiccup does not break the metrics scrape.
+     */
+    @Override
+    public int size() {
+        long now = System.nanoTime();
+        if (now - sizeCountedAt >= SIZE_REFRESH_NANOS) {
+            sizeCountedAt = now;
+            try {
+                cachedSize = CheckJobRepository.countByStatus(CheckJob.Status.QUEUED);
+            } catch (SQLException e) {
+                LOG.warn("Failed to count queued check jobs: {}", e.getMessage());
+                cachedSize = -1;
+            }
+        }
+        return cachedSize;
+    }
+
+    /**
+     * Waits until no job is queued or running on any instance, including jobs waiting to be retried.
+     */
+    @Override
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (CheckJobRepository.countByStatus(CheckJob.Status.QUEUED, CheckJob.Status.RUNNING) > 0) {
+                if (System.nanoTime() > deadline) {
+                    return false;
+                }
+                Thread.sleep(10);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        workers.shutdownNow();
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                idleWorkers.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            int slots = 1 + idleWorkers.drainPermits();
+
+            List<CheckJob> claimed = List.of();
+            try {
+                claimed = CheckJobRepository.claim(slots, lease, maxAttempts);
+                maintain();
+            } catch (SQLException e) {
+                LOG.warn("Failed to claim check jobs: {}", e.getMessage());
+            } finally {
+                idleWorkers.release(slots - claimed.size());
+            }
+
+            for (var job : claimed) {
+                workers.submit(() -> execute(job));
+            }
+            if (claimed.size() < slots) {
+                LockSupport.parkNanos(POLL_TIMEOUT_MILLIS * 1_000_000);
+            }
+        }
+    }
+
+    private void execute(CheckJob job) {
+        events.checkStarted(job);
+        try {
+            var url = new Url(job.getUrlName());
+            url.setId(job.getUrlId());
+
+            UrlCheck urlCheck;
+            try {
+                urlCheck = UrlChecker.check(url);
+            } finally {
+                idleWorkers.release();
+                LockSupport.unpark(dispatcher);
+            }
+            writeBuffer.add(urlCheck).whenCompleteAsync((saved, error) -> {
+                if (error != null) {
+                    fail(job, error);
+                } else {
+                    complete(job, saved);
+                }
+            }, workers);
+        } catch (Exception e) {
+            fail(job, e);
+        }
+    }
+
+    private void complete(CheckJob job, UrlCheck saved) {
+        try {
+            if (CheckJobRepository.complete(job, saved.getId())) {
+                job.markDone(saved);
+                events.checkCompleted(job, saved);
+            }
+        } catch (SQLException e) {
+            LOG.warn("Failed to complete check job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private void fail(CheckJob job, Throwable error) {
+        var message = error.getMessage();
+        try {
+            if (job.getAttempts() < maxAttempts) {
+                var delay = backoffAfter(job.getAttempts());
+                LOG.info("Check of {} failed, retrying in {}s: {}", job.getUrlName(), delay.toSeconds(), message);
+                CheckJobRepository.retry(job, Instant.now().plus(delay), message);
+            } else if (CheckJobRepository.fail(job, message)) {
+                LOG.warn("Check of {} failed after {} attempts: {}", job.getUrlName(), job.getAttempts(), message);
+                job.markFailed(message);
+                events.checkFailed(job, message);
+            }
+        } catch (SQLException e) {
+            LOG.warn("Failed to update check job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private int scheduledCapacity() {
+        return Math.max(1, capacity / 2);
+    }
+
+    private Duration backoffAfter(int attempt) {
+        var delay = backoff.multipliedBy(1L << Math.min(attempt - 1, 16));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+
+    /**
+     * Dead-letters jobs whose last lease expired and drops old done and failed jobs. Runs on the dispatcher
+     * of every instance; the statements are idempotent, so instances do not need to coordinate.
+     */
+    private void maintain() throws SQLException {
+        long now = System.nanoTime();
+        if (now - nextMaintenance < 0) {
+            return;
+        }
+        nextMaintenance = now + MAINTENANCE_INTERVAL.toNanos();
+        CheckJobRepository.failExpired(maxAttempts);
+        CheckJobRepository.deleteFinishedBefore(CheckJob.Status.DONE, Instant.now().minus(DONE_RETENTION));
+        CheckJobRepository.deleteFinishedBefore(CheckJob.Status.FAILED, Instant.now().minus(FAILED_RETENTION));
+    }
+}
@@ -0,0 +1,168 @@
+package hexlet.code.check;
+
+import org.jsoup.internal.StringUtil;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the title, the first h1 and the meta description from an HTML body while it is being read.
+ * Parsing stops as soon as all three fields are found or the byte cap is reached, so large pages
+ * are neither fully downloaded nor fully parsed. The extracted values match those of a full
+ * {@code Jsoup.parse} of the same document.
+ */
+public class HtmlMetaExtractor {
+    private static final int SNIFF_BYTES = 4096;
+    private static final Pattern HEADER_CHARSET = Pattern.compile("charset=[\"']?([\\w.:-]+)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]+charset=[\"']?([\\w.:-]+)",
+            Pattern.CASE_INSENSITIVE);
+
+    public record Result(String title, String h1, String description) {
+    }
+
+    /**
+     * Tells whether a response with the given Content-Type may contain the fields worth extracting.
+     * A missing header is treated as HTML, since many servers omit it for pages.
+     */
+    public static boolean isHtml(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return true;
+        }
+        int parametersStart = contentType.indexOf(';');
+        var mediaType = (parametersStart >= 0 ? contentType.substring(0, parametersStart) : contentType)
+                .trim().toLowerCase();
+        return mediaType.equals("text/html") || mediaType.equals("application/xhtml+xml");
+    }
+
+    /**
+     * Reads the body incrementally and extracts the SEO fields.
+     *
+     * @param body the response body, closed by the caller
+     * @param contentType the Content-Type header of the response, may be null
+     * @param maxBytes the maximum number of body bytes to read
+     * @return the extracted fields, empty strings for the ones that are missing
+     */
+    public static Result extract(InputStream body, String contentType, long maxBytes) throws IOException {
+        var input = new BufferedInputStream(new CappedInputStream(body, maxBytes), SNIFF_BYTES);
+        var charset = detectCharset(input, contentType);
+
+        try (var streamer = new StreamParser(Parser.htmlParser())) {
+            streamer.parse(new InputStreamReader(input, charset), "");
+
+            var titleElement = streamer.selectFirst("head title");
+            String title = titleElement != null ? StringUtil.normaliseWhitespace(titleElement.text()).trim() : "";
+
+            var metaDescription = streamer.selectFirst("meta[name=description]");
+            String description = metaDescription != null ? metaDescription.attr("content") : "";
+
+            var h1Element = streamer.selectFirst("h1");
+            String h1 = h1Element != null ? h1Element.text() : "";
+
+            streamer.stop();
+            return new Result(title, h1, description);
+        }
+    }
+
+    private static Charset detectCharset(BufferedInputStream input, String contentType) throws IOException {
+        var fromHeader = contentType != null ? charsetFrom(HEADER_CHARSET.matcher(contentType)) : null;
+        if (fromHeader != null) {
+            return fromHeader;
+        }
+
+        input.mark(SNIFF_BYTES);
+        byte[] head = input.readNBytes(SNIFF_BYTES);
+        input.reset();
+
+        if (head.length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF) {
+            input.skip(3);
+            return StandardCharsets.UTF_8;
+        }
+        if (head.length >= 2 && (head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (head.length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+
+        var fromMeta = charsetFrom(META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1)));
+        return fromMeta != null ? fromMeta : StandardCharsets.UTF_8;
+    }
+
+    private static Charset charsetFrom(Matcher matcher) {
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return Charset.forName(matcher.group(1));
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+
+    private static final class CappedInputStream extends FilterInputStream {
+        private long remaining;
+
+        CappedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.remaining = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = super.read();
+            if (value != -1) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // The body is owned by the caller, which may prefer to abort the connection over draining it.
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package hexlet.code.check;
+
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.UrlCheckRepository;
+import kong.unirest.Headers;
+import kong.unirest.RawResponse;
+import kong.unirest.Unirest;
+import kong.unirest.UnirestInstance;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.sql.SQLException;
+import java.time.Duration;
+
+public class UrlChecker {
+    private static final long DEFAULT_MAX_BODY_BYTES = 1024 * 1024;
+
+    private static final Duration DEFAULT_TOTAL_TIMEOUT = Duration.ofSeconds(30);
+
+    // Bodies with at most this much left unread are drained, so their connection can be reused
+    private static final int DRAIN_LIMIT_BYTES = 16 * 1024;
+
+    private static volatile long maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+    private static volatile long totalTimeoutNanos = DEFAULT_TOTAL_TIMEOUT.toNanos();
+    private static volatile UnirestInstance httpClient = Unirest.primaryInstance();
+
+    public static void setMaxBodyBytes(long maxBytes) {
+        maxBodyBytes = maxBytes;
+    }
+
+    /**
+     * Limits the time a whole check may take, from sending the request to the end of the body.
+     */
+    public static void setTotalTimeout(Duration timeout) {
+        totalTimeoutNanos = timeout.toNanos();
+    }
+
+    public static void setHttpClient(UnirestInstance client) {
+        httpClient = client;
+    }
+
+    private record Outcome(UrlCheck check, RuntimeException error) {
+    }
+
+    /**
+     * Fetches the page behind the given URL and extracts the SEO fields from it.
+     * If the previous check of the URL recorded cache validators, the request is made conditional,
+     * and a {@code 304 Not Modified} answer yields a copy of the previous check without reading a body.
+     * The returned check is not persisted.
+     *
+     * @param url the URL to check
+     * @return the extracted check
+     */
+    public static UrlCheck check(Url url) throws SQLException {
+        var previous = UrlCheckRepository.findLatestByUrlId(url.getId())
+                .filter(check -> check.getStatusCode() < 400)
+                .orElse(null);
+
+        var request = httpClient.get(url.getName());
+        if (previous != null && previous.getEtag() != null) {
+            request.header("If-None-Match", previous.getEtag());
+        }
+        if (previous != null && previous.getLastModified() != null) {
+            request.header("If-Modified-Since", previous.getLastModified());
+        }
+
+        long start = System.nanoTime();
+        UrlCheck urlCheck;
+        try {
+            var response = request.asObject(raw -> {
+                try {
+                    return new Outcome(processCheckResponse(raw, previous, start), null);
+                } catch (RuntimeException e) {
+                    // Returned, not thrown: Unirest would read the rest of the body to report it, with no
+                    // deadline. On return it releases the request, which aborts the unread connection.
+                    return new Outcome(null, e);
+                }
+            });
+            if (response.getParsingError().isPresent()) {
+                throw response.getParsingError().get();
+            }
+            if (response.getBody().error() != null) {
+                throw response.getBody().error();
+            }
+            urlCheck = response.getBody().check();
+        } catch (RuntimeException e) {
+            Metrics.recordCheckOutcome("error");
+            throw e;
+        }
+        urlCheck.setUrlId(url.getId());
+        return urlCheck;
+    }
+
+    private static UrlCheck processCheckResponse(RawResponse response, UrlCheck previous, long start) {
+        long fetched = System.nanoTime();
+        Metrics.recordCheckFetch(fetched - start);
+        int statusCode = response.getStatus();
+        var headers = response.getHeaders();
+        var content = new DeadlineInputStream(response.getContent(), start + totalTimeoutNanos);
+
+        if (statusCode == 304 && previous != null) {
+            drainSmallRemainder(content, headers);
+            var urlCheck = new UrlCheck(previous.getStatusCode(), previous.getTitle(), previous.getH1(),
+                    previous.getDescription());
+            urlCheck.setEtag(headers.containsKey("ETag") ? headers.getFirst("ETag") : previous.getEtag());
+            urlCheck.setLastModified(headers.containsKey("Last-Modified")
+                    ? headers.getFirst("Last-Modified") : previous.getLastModified());
+            Metrics.recordCheckOutcome("revalidated");
+            return urlCheck;
+        }
+
+        String contentType = headers.getFirst("Content-Type");
+        if (!HtmlMetaExtractor.isHtml(contentType) || "0".equals(headers.getFirst("Content-Length"))) {
+            drainSmallRemainder(content, headers);
+            Metrics.recordCheckOutcome(statusCode < 400 ? "not_html" : "http_error");
+            return new UrlCheck(statusCode, "", "", "");
+        }
+
+        try {
+            var result = HtmlMetaExtractor.extract(content, contentType, maxBodyBytes);
+            drainSmallRemainder(content, headers);
+            var urlCheck = new UrlCheck(statusCode, result.title(), result.h1(), result.description());
+            if (statusCode < 400) {
+                urlCheck.setEtag(emptyToNull(headers.getFirst("ETag")));
+                urlCheck.setLastModified(emptyToNull(headers.getFirst("Last-Modified")));
+            }
+            Metrics.recordCheckOutcome(statusCode < 400 ? "ok" : "http_error");
+            return urlCheck;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            Metrics.recordCheckParse(System.nanoTime() - fetched);
+        }
+    }
+
+    /**
+     * Reads the rest of the body when at most {@link #DRAIN_LIMIT_BYTES} are left, so the connection
+     * goes back to the pool for the next check of the host. A larger or unfinished remainder is left
+     * unread, and the connection is aborted when Unirest releases the request.
+     */
+    private static void drainSmallRemainder(DeadlineInputStream content, Headers headers) {
+        long length = parseContentLength(headers.getFirst("Content-Length"));
+        if (length >= 0 && length - content.getConsumed() > DRAIN_LIMIT_BYTES) {
+            return;
+        }
+        var buffer = new byte[4096];
+        long limit = content.getConsumed() + DRAIN_LIMIT_BYTES;
+        try {
+            while (content.getConsumed() <= limit) {
+                int toRead = (int) Math.min(buffer.length, limit + 1 - content.getConsumed());
+                if (content.read(buffer, 0, toRead) == -1) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // The connection is aborted as for any unread body
+        }
+    }
+
+    private static long parseContentLength(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Fails reads once the deadline has passed, so a slowly trickling body cannot hold a worker
+     * longer than the total timeout even though every single read stays under the socket timeout.
+     * Also counts the bytes consumed, to tell how much of the body is left.
+     */
+    private static final class DeadlineInputStream extends FilterInputStream {
+        private final long deadlineNanos;
+        private long consumed;
+
+        DeadlineInputStream(InputStream in, long deadlineNanos) {
+            super(in);
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        long getConsumed() {
+            return consumed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            int value = super.read();
+            if (value != -1) {
+                consumed++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkDeadline();
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                consumed += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkDeadline();
+            long skipped = super.skip(n);
+            consumed += skipped;
+            return skipped;
+        }
+
+        private void checkDeadline() throws SocketTimeoutException {
+            if (System.nanoTime() - deadlineNanos > 0) {
+                throw new SocketTimeoutException("Check exceeded the total timeout");
+            }
+        }
+    }
+}
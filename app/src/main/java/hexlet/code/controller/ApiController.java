@@ -0,0 +1,211 @@
+package hexlet.code.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import hexlet.code.model.CheckRollup;
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.RowHandler;
+import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlRepository;
+import io.javalin.http.Context;
+import io.javalin.http.NotFoundResponse;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Read-only JSON API. Responses are written with a streaming generator while the rows are read,
+ * so an export of any size is served in constant memory. Pages are addressed with an {@code after}
+ * id cursor and an optional {@code limit}; {@code fields} selects a comma-separated subset of fields.
+ * The daily history of a URL is small by construction, one item per day, and is returned whole.
+ */
+public class ApiController {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static final Map<String, Function<Url, Object>> URL_FIELDS = new LinkedHashMap<>();
+    private static final Map<String, Function<UrlCheck, Object>> CHECK_FIELDS = new LinkedHashMap<>();
+    private static final Map<String, Function<CheckRollup, Object>> HISTORY_FIELDS = new LinkedHashMap<>();
+    private static final int DEFAULT_HISTORY_DAYS = 30;
+
+    static {
+        URL_FIELDS.put("id", Url::getId);
+        URL_FIELDS.put("name", Url::getName);
+        URL_FIELDS.put("createdAt", url -> iso(url.getCreatedAt()));
+        URL_FIELDS.put("statusCode", Url::getStatusCode);
+        URL_FIELDS.put("title", Url::getTitle);
+        URL_FIELDS.put("h1", Url::getH1);
+        URL_FIELDS.put("description", Url::getDescription);
+        URL_FIELDS.put("lastCheckAt", url -> iso(url.getLastCheckAt()));
+
+        CHECK_FIELDS.put("id", UrlCheck::getId);
+        CHECK_FIELDS.put("urlId", UrlCheck::getUrlId);
+        CHECK_FIELDS.put("statusCode", UrlCheck::getStatusCode);
+        CHECK_FIELDS.put("title", UrlCheck::getTitle);
+        CHECK_FIELDS.put("h1", UrlCheck::getH1);
+        CHECK_FIELDS.put("description", UrlCheck::getDescription);
+        CHECK_FIELDS.put("createdAt", check -> iso(check.getCreatedAt()));
+
+        HISTORY_FIELDS.put("day", rollup -> rollup.getDay().toString());
+        HISTORY_FIELDS.put("checkCount", CheckRollup::getCheckCount);
+        HISTORY_FIELDS.put("status2xx", CheckRollup::getStatus2xx);
+        HISTORY_FIELDS.put("status3xx", CheckRollup::getStatus3xx);
+        HISTORY_FIELDS.put("status4xx", CheckRollup::getStatus4xx);
+        HISTORY_FIELDS.put("status5xx", CheckRollup::getStatus5xx);
+        HISTORY_FIELDS.put("statusOther", CheckRollup::getStatusOther);
+        HISTORY_FIELDS.put("firstTitle", CheckRollup::getFirstTitle);
+        HISTORY_FIELDS.put("lastTitle", CheckRollup::getLastTitle);
+        HISTORY_FIELDS.put("titleChanges", CheckRollup::getTitleChanges);
+    }
+
+    @FunctionalInterface
+    private interface Source<T> {
+        void stream(int afterId, int limit, RowHandler<T> handler) throws SQLException, IOException;
+    }
+
+    public static void handleUrls(Context ctx) throws SQLException, IOException {
+        stream(ctx, URL_FIELDS, Url::getId, UrlRepository::streamAfter);
+    }
+
+    public static void handleUrlChecks(Context ctx) throws SQLException, IOException {
+        int id = Integer.parseInt(ctx.pathParam("id"));
+        UrlRepository.findById(id).orElseThrow(() -> new NotFoundResponse("URL not found"));
+        stream(ctx, CHECK_FIELDS, UrlCheck::getId,
+                (afterId, limit, handler) -> UrlCheckRepository.streamByUrlId(id, afterId, limit, handler));
+    }
+
+    /**
+     * Writes {@code {"items": [...]}} with one item per UTC day since {@code from} (an ISO date,
+     * 30 days ago by default), covering compacted and raw checks alike.
+     */
+    public static void handleUrlHistory(Context ctx) throws SQLException, IOException {
+        int id = Integer.parseInt(ctx.pathParam("id"));
+        var fromDay = parseDateParam(ctx, "from", LocalDate.now(ZoneOffset.UTC).minusDays(DEFAULT_HISTORY_DAYS));
+        var selected = selectFields(ctx, HISTORY_FIELDS);
+        UrlRepository.findById(id).orElseThrow(() -> new NotFoundResponse("URL not found"));
+        var history = UrlCheckRepository.findDailyHistory(id, fromDay);
+
+        ctx.contentType("application/json");
+        try (var json = JSON_FACTORY.createGenerator(ctx.outputStream())) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("items");
+            for (var rollup : history) {
+                json.writeStartObject();
+                for (var field : selected) {
+                    json.writeObjectField(field.getKey(), field.getValue().apply(rollup));
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes {@code {"items": [...], "nextCursor": id}}. When a limit is given, one extra row is read
+     * to tell whether another page exists; {@code nextCursor} is null on the last page.
+     */
+    private static <T> void stream(Context ctx, Map<String, Function<T, Object>> fields, ToIntFunction<T> idOf,
+                                   Source<T> source) throws SQLException, IOException {
+        int afterId = parseIntParam(ctx, "after", 0);
+        int limit = parseIntParam(ctx, "limit", Integer.MAX_VALUE);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Parameter 'limit' must be positive");
+        }
+        var selected = selectFields(ctx, fields);
+
+        ctx.contentType("application/json");
+        try (var json = JSON_FACTORY.createGenerator(ctx.outputStream())) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("items");
+
+            int[] written = {0};
+            int[] lastId = {0};
+            boolean[] hasMore = {false};
+            int fetchLimit = limit == Integer.MAX_VALUE ? limit : limit + 1;
+            source.stream(afterId, fetchLimit, row -> {
+                if (written[0] == limit) {
+                    hasMore[0] = true;
+                    return;
+                }
+                json.writeStartObject();
+                for (var field : selected) {
+                    json.writeObjectField(field.getKey(), field.getValue().apply(row));
+                }
+                json.writeEndObject();
+                written[0]++;
+                lastId[0] = idOf.applyAsInt(row);
+            });
+
+            json.writeEndArray();
+            if (hasMore[0]) {
+                json.writeNumberField("nextCursor", lastId[0]);
+            } else {
+                json.writeNullField("nextCursor");
+            }
+            json.writeEndObject();
+        }
+    }
+
+    private static <T> List<Map.Entry<String, Function<T, Object>>> selectFields(
+            Context ctx, Map<String, Function<T, Object>> fields) {
+        var param = ctx.queryParam("fields");
+        if (param == null || param.isBlank()) {
+            return new ArrayList<>(fields.entrySet());
+        }
+        var requested = new HashSet<String>();
+        for (var name : param.split(",")) {
+            if (!fields.containsKey(name.trim())) {
+                throw new IllegalArgumentException("Unknown field '" + name.trim() + "'");
+            }
+            requested.add(name.trim());
+        }
+        var selected = new ArrayList<Map.Entry<String, Function<T, Object>>>();
+        for (var entry : fields.entrySet()) {
+            if (requested.contains(entry.getKey())) {
+                selected.add(entry);
+            }
+        }
+        return selected;
+    }
+
+    private static String iso(Instant instant) {
+        return instant != null ? instant.toString() : null;
+    }
+
+    private static LocalDate parseDateParam(Context ctx, String name, LocalDate defaultValue) {
+        var value = ctx.queryParam(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid value of parameter '" + name + "'");
+        }
+    }
+
+    private static int parseIntParam(Context ctx, String name, int defaultValue) {
+        var value = ctx.queryParam(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value of parameter '" + name + "'");
+        }
+    }
+}
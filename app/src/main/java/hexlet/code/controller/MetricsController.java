@@ -0,0 +1,11 @@
+package hexlet.code.controller;
+
+import hexlet.code.metrics.Metrics;
+import io.javalin.http.Context;
+
+public class MetricsController {
+    public static void handleMetrics(Context ctx) {
+        ctx.contentType(Metrics.CONTENT_TYPE);
+        ctx.result(Metrics.scrape());
+    }
+}
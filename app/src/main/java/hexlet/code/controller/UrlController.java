@@ -1,98 +1,135 @@
 package hexlet.code.controller;
 
+import hexlet.code.App;
+import hexlet.code.ErrorResponse;
+import hexlet.code.model.CheckJob;
 import hexlet.code.model.Url;
-import hexlet.code.model.UrlCheck;
 import hexlet.code.repository.UrlRepository;
+import hexlet.code.util.ConditionalRequests;
+import hexlet.code.util.TemplateRenderer;
+import hexlet.code.util.UrlImporter;
+import hexlet.code.util.UrlNormalizer;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
 import io.javalin.http.NotFoundResponse;
-import kong.unirest.HttpResponse;
-import kong.unirest.Unirest;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import io.javalin.http.sse.SseClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 
 public class UrlController {
+    private static final Logger LOG = LoggerFactory.getLogger(UrlController.class);
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
 
-    public static void handleRootRoute(Context ctx) {
+    public static void handleRootRoute(Context ctx) throws IOException {
         Map<String, Object> model = new HashMap<>();
         model.put("title", "Main");
         model.put("flash", ctx.sessionAttribute("flash"));
         ctx.sessionAttribute("flash", null);
-        ctx.render("index.jte", model);
+        TemplateRenderer.render(ctx, "index.jte", model);
     }
 
     public static void handleUrlCreation(Context ctx) throws SQLException {
-        var inputUrl = ctx.formParam("url");
-        URI parsedUrl;
-        try {
-            parsedUrl = new URI(inputUrl);
-            if (parsedUrl.getScheme() == null || parsedUrl.getHost() == null) {
-                throw new URISyntaxException(inputUrl, "Missing scheme or host");
-            }
-        } catch (Exception e) {
+        var normalized = UrlNormalizer.normalize(ctx.formParam("url"));
+        if (normalized.isEmpty()) {
             ctx.sessionAttribute("flash", "Некорректный URL");
             ctx.sessionAttribute("flash-type", "danger");
             ctx.redirect("/");
             return;
         }
+        String normalizedUrl = normalized.get();
 
-        String normalizedUrl = String
-            .format(
-                "%s://%s%s",
-                parsedUrl.getScheme(),
-                parsedUrl.getHost(),
-                parsedUrl.getPort() == -1 ? "" : ":" + parsedUrl.getPort()
-            )
-            .toLowerCase();
-
-        Url url = UrlRepository.findByName(normalizedUrl).orElse(null);
-
-        if (url != null) {
-            ctx.sessionAttribute("flash", "Страница уже существует");
-            ctx.sessionAttribute("flash-type", "info");
-            ctx.redirect("/urls/" + url.getId());
-        } else {
-            Url newUrl = new Url(normalizedUrl);
-            UrlRepository.save(newUrl);
+        var url = new Url(normalizedUrl);
+        if (UrlRepository.saveIfAbsent(url)) {
             ctx.sessionAttribute("flash", "Страница успешно добавлена");
             ctx.sessionAttribute("flash-type", "success");
-            ctx.redirect("/urls/" + newUrl.getId());
+        } else {
+            ctx.sessionAttribute("flash", "Страница уже существует");
+            ctx.sessionAttribute("flash-type", "info");
         }
+        ctx.redirect("/urls/" + url.getId());
     }
 
-    public static void handleUrlsListing(Context ctx) throws SQLException {
-        var urls = UrlRepository.getAll();
+    public static void handleUrlImport(Context ctx) throws IOException, SQLException {
+        var uploadedFile = ctx.isMultipartFormData() ? ctx.uploadedFile("file") : null;
+        try (var input = uploadedFile != null ? uploadedFile.content() : ctx.bodyInputStream()) {
+            ctx.json(UrlImporter.importFrom(input));
+        }
+    }
+
+    public static void handleUrlsListing(Context ctx) throws SQLException, IOException {
+        int size = Math.min(Math.max(parseIntParam(ctx, "size", DEFAULT_PAGE_SIZE), 1), MAX_PAGE_SIZE);
+        Integer after = parseIntParam(ctx, "after", null);
+        Integer before = parseIntParam(ctx, "before", null);
+        if (ctx.sessionAttribute("flash") == null
+                && ConditionalRequests.isNotModified(ctx, UrlRepository.findListingVersion())) {
+            return;
+        }
+
+        var page = UrlRepository.findPage(after, before, size);
         Map<String, Object> model = new HashMap<>();
-        model.put("urls", urls);
+        model.put("page", page);
+        model.put("size", size);
 
         if (ctx.sessionAttribute("flash") != null) {
             model.put("flash", ctx.sessionAttribute("flash"));
         }
 
         ctx.sessionAttribute("flash", null);
-        ctx.render("urls/index.jte", model);
+        TemplateRenderer.render(ctx, "urls/index.jte", model);
     }
 
-    public static void handleSingleUrlView(Context ctx) throws SQLException {
+    public static void handleSingleUrlView(Context ctx) throws SQLException, IOException {
         int id = Integer.parseInt(ctx.pathParam("id"));
+        int size = Math.min(Math.max(parseIntParam(ctx, "size", DEFAULT_PAGE_SIZE), 1), MAX_PAGE_SIZE);
+        Integer before = parseIntParam(ctx, "before", null);
+
+        // Pages carrying a flash message or a pending check are personal and never answered with 304
+        if (ctx.sessionAttribute("flash") == null && ctx.sessionAttribute("check-job") == null) {
+            var version = UrlRepository.findViewVersion(id).orElseThrow(() -> new NotFoundResponse("URL not found"));
+            if (ConditionalRequests.isNotModified(ctx, version)) {
+                return;
+            }
+        }
 
-        var urlEntity = UrlRepository.findById(id)
+        var urlEntity = UrlRepository.findByIdWithChecks(id, before, size)
                 .orElseThrow(() -> new NotFoundResponse("URL not found"));
 
         Map<String, Object> model = new HashMap<>();
         model.put("url", urlEntity);
+        model.put("size", size);
+        model.put("isHistoryPage", before != null);
+
+        String jobId = ctx.sessionAttribute("check-job");
+        if (jobId != null) {
+            var job = App.getCheckJobQueue().findJob(jobId).orElse(null);
+            if (job == null) {
+                ctx.sessionAttribute("check-job", null);
+            } else if (job.getUrlId() == id) {
+                if (job.getStatus() == CheckJob.Status.DONE) {
+                    ctx.sessionAttribute("flash", "Страница успешно проверена");
+                    ctx.sessionAttribute("check-job", null);
+                } else if (job.getStatus() == CheckJob.Status.FAILED) {
+                    ctx.sessionAttribute("flash", "Failed to check the page");
+                    ctx.sessionAttribute("check-job", null);
+                } else {
+                    model.put("pendingJobId", jobId);
+                }
+            }
+        }
 
         if (ctx.sessionAttribute("flash") != null) {
             model.put("flash", ctx.sessionAttribute("flash"));
         }
 
         ctx.sessionAttribute("flash", null);
-        ctx.render("urls/show.jte", model);
+        TemplateRenderer.render(ctx, "urls/show.jte", model);
     }
 
     public static void handleUrlCheck(Context ctx) throws SQLException {
@@ -100,40 +137,63 @@ public class UrlController {
         var urlEntity = UrlRepository.findById(id)
                 .orElseThrow(() -> new NotFoundResponse("URL not found"));
 
-        try {
-            HttpResponse<String> response = Unirest.get(urlEntity.getName()).asString();
-            processCheckResponse(response, urlEntity);
-            ctx.sessionAttribute("flash", "Страница успешно проверена");
-        } catch (Exception e) {
-            System.out.println("[DEBUG_LOG] URL check failed: " + e.getMessage());
-            String errorMessage = "Failed to check the page";
-            System.out.println("[DEBUG_LOG] Setting flash message: " + errorMessage);
-            ctx.sessionAttribute("flash", errorMessage);
+        var job = App.getCheckJobQueue().submit(urlEntity);
+        if (job.isEmpty()) {
+            LOG.info("Check queue is full, rejecting check of URL {}", id);
+            App.getCheckBulkhead().reject(ctx);
+            handleCheckRejected(ctx);
+            return;
+        }
+        if (acceptsJson(ctx)) {
+            ctx.status(HttpStatus.ACCEPTED).json(job.get());
+            return;
         }
 
+        ctx.sessionAttribute("check-job", job.get().getId());
+        ctx.sessionAttribute("flash", "Проверка запущена");
         ctx.redirect("/urls/" + id);
     }
 
-    private static void processCheckResponse(HttpResponse<String> response, Url urlEntity) throws SQLException {
-        int statusCode = response.getStatus();
-        String body = response.getBody();
+    /**
+     * Writes the body of a check request answered with 429. Browsers do not follow the Location
+     * of a 429, so a form post gets a page that sends it back to the URL page and its flash message.
+     */
+    public static void handleCheckRejected(Context ctx) {
+        if (acceptsJson(ctx)) {
+            ctx.json(new ErrorResponse("Too many requests", "Too many checks are queued, retry later"));
+            return;
+        }
+        var page = "/urls/" + Integer.parseInt(ctx.pathParam("id"));
+        ctx.sessionAttribute("flash", "Слишком много проверок в очереди, попробуйте позже");
+        ctx.header(Header.LOCATION, page);
+        ctx.html("<meta http-equiv=\"refresh\" content=\"0; url=" + page + "\">");
+    }
+
+    public static void handleCheckEvents(SseClient client) {
+        int id = Integer.parseInt(client.ctx().pathParam("id"));
+        App.getCheckEvents().subscribe(id, client);
+    }
 
-        Document document = Jsoup.parse(body);
-        String title = document.title();
+    public static void handleCheckJobStatus(Context ctx) throws SQLException {
+        var job = App.getCheckJobQueue().findJob(ctx.pathParam("jobId"))
+                .orElseThrow(() -> new NotFoundResponse("Check job not found"));
+        ctx.json(job);
+    }
 
-        String h1 = "";
-        var h1Element = document.selectFirst("h1");
-        if (h1Element != null) {
-            h1 = h1Element.text();
-        }
+    private static boolean acceptsJson(Context ctx) {
+        var accept = ctx.header("Accept");
+        return accept != null && accept.contains("application/json");
+    }
 
-        String description = "";
-        var metaDescription = document.selectFirst("meta[name=description]");
-        if (metaDescription != null) {
-            description = metaDescription.attr("content");
+    private static Integer parseIntParam(Context ctx, String name, Integer defaultValue) {
+        var value = ctx.queryParam(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " parameter: " + value);
         }
-
-        var urlCheck = new UrlCheck(statusCode, title, h1, description);
-        UrlRepository.saveCheck(urlEntity, urlCheck);
     }
 }
@@ -0,0 +1,60 @@
+package hexlet.code.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed buckets, rendered in the Prometheus text format.
+ */
+public class Histogram {
+    static final double[] DEFAULT_BUCKETS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30
+    };
+
+    private final double[] bounds;
+    private final long[] boundsNanos;
+    private final LongAdder[] counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram(double[] bounds) {
+        this.bounds = bounds;
+        this.boundsNanos = new long[bounds.length];
+        this.counts = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < bounds.length; i++) {
+            boundsNanos[i] = (long) (bounds[i] * 1_000_000_000L);
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void observeNanos(long nanos) {
+        int bucket = 0;
+        while (bucket < boundsNanos.length && nanos > boundsNanos[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    void writeTo(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i].sum();
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(bounds[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        cumulative += counts[bounds.length].sum();
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(cumulative).append('\n');
+
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,195 @@
+package hexlet.code.metrics;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.sse.SseClient;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Process-wide metrics registry. Recording only touches {@link LongAdder}s, so it is cheap and
+ * lock-free on the request path; the Prometheus text is built when {@link #scrape()} is called.
+ */
+public class Metrics {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private record Gauge(String help, String type, DoubleSupplier value) {
+    }
+
+    private static final Map<String, Histogram> ROUTES = new ConcurrentSkipListMap<>();
+    private static final Histogram CHECK_FETCH = new Histogram(Histogram.DEFAULT_BUCKETS);
+    private static final Histogram CHECK_PARSE = new Histogram(Histogram.DEFAULT_BUCKETS);
+    private static final Histogram CHECK_PERSIST = new Histogram(Histogram.DEFAULT_BUCKETS);
+    private static final Map<String, LongAdder> CHECK_OUTCOMES = new ConcurrentSkipListMap<>();
+    private static final Map<String, PoolStats> POOLS = new ConcurrentSkipListMap<>();
+    private static final Map<String, Histogram> POOL_ACQUIRE = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> POOL_TIMEOUTS = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> GAUGES = new ConcurrentSkipListMap<>();
+    private static final String START_ATTRIBUTE = Metrics.class.getName() + ".start";
+
+    /**
+     * Wraps the handler so that its latency is recorded in the route histogram.
+     *
+     * @param method the HTTP method the handler is registered for
+     * @param path the path template the handler is registered for
+     * @param handler the handler to time
+     * @return the timed handler
+     */
+    public static Handler timed(String method, String path, Handler handler) {
+        var histogram = routeHistogram(method, path);
+        return ctx -> {
+            long start = System.nanoTime();
+            try {
+                handler.handle(ctx);
+            } finally {
+                histogram.observeNanos(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Notes when the request started. Registered as a before-handler of SSE routes, whose handlers
+     * run only after Javalin has flushed the response headers.
+     */
+    public static void markStart(Context ctx) {
+        ctx.attribute(START_ATTRIBUTE, System.nanoTime());
+    }
+
+    /**
+     * Wraps the SSE handler so that the time to the first byte of the stream, from {@link #markStart}
+     * to the flushed response headers, is recorded in the route histogram. The stream then stays open
+     * as long as the page does, so its lifetime is not recorded as latency.
+     *
+     * @param path the path template the handler is registered for
+     * @param handler the SSE handler to time
+     * @return the timed handler
+     */
+    public static Consumer<SseClient> timedSse(String path, Consumer<SseClient> handler) {
+        var histogram = routeHistogram("GET", path);
+        return client -> {
+            Long start = client.ctx().attribute(START_ATTRIBUTE);
+            if (start != null) {
+                histogram.observeNanos(System.nanoTime() - start);
+            }
+            handler.accept(client);
+        };
+    }
+
+    public static void recordCheckFetch(long nanos) {
+        CHECK_FETCH.observeNanos(nanos);
+    }
+
+    public static void recordCheckParse(long nanos) {
+        CHECK_PARSE.observeNanos(nanos);
+    }
+
+    public static void recordCheckPersist(long nanos) {
+        CHECK_PERSIST.observeNanos(nanos);
+    }
+
+    public static void recordCheckOutcome(String outcome) {
+        CHECK_OUTCOMES.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+    }
+
+    public static long getCheckOutcomeCount(String outcome) {
+        var counter = CHECK_OUTCOMES.get(outcome);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * Registers a value that is read on every scrape.
+     *
+     * @param name the metric name
+     * @param help the metric description
+     * @param type "gauge" or "counter"
+     * @param value the supplier of the current value
+     */
+    public static void registerGauge(String name, String help, String type, DoubleSupplier value) {
+        GAUGES.put(name, new Gauge(help, type, value));
+    }
+
+    /**
+     * Returns a HikariCP tracker factory that exposes pool occupancy and connection acquire times.
+     */
+    public static MetricsTrackerFactory poolTrackerFactory() {
+        return (poolName, poolStats) -> {
+            POOLS.put(poolName, poolStats);
+            var acquire = new Histogram(Histogram.DEFAULT_BUCKETS);
+            var timeouts = new LongAdder();
+            POOL_ACQUIRE.put(poolName, acquire);
+            POOL_TIMEOUTS.put(poolName, timeouts);
+            return new IMetricsTracker() {
+                @Override
+                public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                    acquire.observeNanos(elapsedAcquiredNanos);
+                }
+
+                @Override
+                public void recordConnectionTimeout() {
+                    timeouts.increment();
+                }
+            };
+        };
+    }
+
+    private static Histogram routeHistogram(String method, String path) {
+        return ROUTES.computeIfAbsent("method=\"" + method + "\",route=\"" + path + "\"",
+                labels -> new Histogram(Histogram.DEFAULT_BUCKETS));
+    }
+
+    public static String scrape() {
+        var out = new StringBuilder(8192);
+
+        header(out, "http_server_request_duration_seconds", "Latency of HTTP handlers", "histogram");
+        ROUTES.forEach((labels, histogram) -> histogram.writeTo(out, "http_server_request_duration_seconds", labels));
+
+        header(out, "check_fetch_duration_seconds", "Time until the checked page responded", "histogram");
+        CHECK_FETCH.writeTo(out, "check_fetch_duration_seconds", "");
+        header(out, "check_parse_duration_seconds", "Time spent reading and parsing the checked page", "histogram");
+        CHECK_PARSE.writeTo(out, "check_parse_duration_seconds", "");
+        header(out, "check_persist_duration_seconds", "Time spent writing a batch of checks", "histogram");
+        CHECK_PERSIST.writeTo(out, "check_persist_duration_seconds", "");
+
+        header(out, "check_outcomes_total", "Finished checks by outcome", "counter");
+        CHECK_OUTCOMES.forEach((outcome, counter) -> out.append("check_outcomes_total{outcome=\"").append(outcome)
+                .append("\"} ").append(counter.sum()).append('\n'));
+
+        header(out, "hikaricp_connections_active", "Connections in use", "gauge");
+        POOLS.forEach((pool, stats) -> sample(out, "hikaricp_connections_active", pool, stats.getActiveConnections()));
+        header(out, "hikaricp_connections_idle", "Idle connections", "gauge");
+        POOLS.forEach((pool, stats) -> sample(out, "hikaricp_connections_idle", pool, stats.getIdleConnections()));
+        header(out, "hikaricp_connections_pending", "Threads waiting for a connection", "gauge");
+        POOLS.forEach((pool, stats) -> sample(out, "hikaricp_connections_pending", pool, stats.getPendingThreads()));
+        header(out, "hikaricp_connections_max", "Maximum pool size", "gauge");
+        POOLS.forEach((pool, stats) -> sample(out, "hikaricp_connections_max", pool, stats.getMaxConnections()));
+        header(out, "hikaricp_connection_timeouts_total", "Connection acquire timeouts", "counter");
+        POOL_TIMEOUTS.forEach((pool, counter) -> sample(out, "hikaricp_connection_timeouts_total", pool,
+                counter.sum()));
+        header(out, "hikaricp_connection_acquire_seconds", "Time to acquire a connection", "histogram");
+        POOL_ACQUIRE.forEach((pool, histogram) -> histogram.writeTo(out, "hikaricp_connection_acquire_seconds",
+                "pool=\"" + pool + "\""));
+
+        GAUGES.forEach((name, gauge) -> {
+            header(out, name, gauge.help(), gauge.type());
+            out.append(name).append(' ').append(gauge.value().getAsDouble()).append('\n');
+        });
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String pool, long value) {
+        out.append(name).append("{pool=\"").append(pool).append("\"} ").append(value).append('\n');
+    }
+}
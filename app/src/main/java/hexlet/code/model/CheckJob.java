@@ -0,0 +1,55 @@
+package hexlet.code.model;
+
+import lombok.Getter;
+
+@Getter
+public class CheckJob {
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private final String id;
+    private final int urlId;
+    private final String urlName;
+
+    private volatile Status status = Status.QUEUED;
+    private volatile int attempts;
+    private volatile Integer checkId;
+    private volatile String error;
+
+    public CheckJob(String id, Url url) {
+        this.id = id;
+        this.urlId = url.getId();
+        this.urlName = url.getName();
+    }
+
+    public CheckJob(String id, int urlId, String urlName, Status status, int attempts, Integer checkId,
+                    String error) {
+        this.id = id;
+        this.urlId = urlId;
+        this.urlName = urlName;
+        this.status = status;
+        this.attempts = attempts;
+        this.checkId = checkId;
+        this.error = error;
+    }
+
+    public void markRunning() {
+        this.attempts++;
+        this.status = Status.RUNNING;
+    }
+
+    public void markDone(UrlCheck check) {
+        this.checkId = check.getId();
+        this.status = Status.DONE;
+    }
+
+    public void markFailed(String message) {
+        this.error = message;
+        this.status = Status.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+}
@@ -0,0 +1,81 @@
+package hexlet.code.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Summary of the checks of one URL made during one UTC day.
+ */
+@Getter
+@Setter
+public class CheckRollup {
+    private int urlId;
+    private LocalDate day;
+    private int checkCount;
+    private int status2xx;
+    private int status3xx;
+    private int status4xx;
+    private int status5xx;
+    private int statusOther;
+    private String firstTitle;
+    private String lastTitle;
+    private int titleChanges;
+
+    public CheckRollup() {
+    }
+
+    public CheckRollup(int urlId, LocalDate day) {
+        this.urlId = urlId;
+        this.day = day;
+    }
+
+    /**
+     * Counts the check in this rollup. Checks must be added in the order they were made.
+     *
+     * @param check the check to add
+     */
+    public void add(UrlCheck check) {
+        if (checkCount == 0) {
+            firstTitle = check.getTitle();
+        } else if (!Objects.equals(lastTitle, check.getTitle())) {
+            titleChanges++;
+        }
+        lastTitle = check.getTitle();
+        checkCount++;
+
+        switch (check.getStatusCode() / 100) {
+            case 2 -> status2xx++;
+            case 3 -> status3xx++;
+            case 4 -> status4xx++;
+            case 5 -> status5xx++;
+            default -> statusOther++;
+        }
+    }
+
+    /**
+     * Appends a rollup of later checks of the same URL and day to this one.
+     *
+     * @param later the rollup of checks made after the ones in this rollup
+     */
+    public void merge(CheckRollup later) {
+        if (later.checkCount == 0) {
+            return;
+        }
+        if (checkCount == 0) {
+            firstTitle = later.firstTitle;
+        } else if (!Objects.equals(lastTitle, later.firstTitle)) {
+            titleChanges++;
+        }
+        lastTitle = later.lastTitle;
+        titleChanges += later.titleChanges;
+        checkCount += later.checkCount;
+        status2xx += later.status2xx;
+        status3xx += later.status3xx;
+        status4xx += later.status4xx;
+        status5xx += later.status5xx;
+        statusOther += later.statusOther;
+    }
+}
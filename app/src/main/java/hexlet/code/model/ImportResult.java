@@ -0,0 +1,4 @@
+package hexlet.code.model;
+
+public record ImportResult(int inserted, int duplicates, int invalid) {
+}
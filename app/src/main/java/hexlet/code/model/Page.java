@@ -0,0 +1,13 @@
+package hexlet.code.model;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing.
+ *
+ * @param items the rows of the page
+ * @param prevCursor the id to request the previous page before, or null on the first page
+ * @param nextCursor the id to request the next page after, or null on the last page
+ */
+public record Page<T>(List<T> items, Integer prevCursor, Integer nextCursor) {
+}
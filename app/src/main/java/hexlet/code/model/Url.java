@@ -21,6 +21,7 @@ public class Url {
     private Instant lastCheckAt;
 
     private List<UrlCheck> checks = new ArrayList<>();
+    private Integer olderChecksCursor;
 
     public Url() {
     }
@@ -13,6 +13,8 @@ public class UrlCheck {
     private String title;
     private String h1;
     private String description;
+    private String etag;
+    private String lastModified;
     private int urlId;
     private Instant createdAt;
 
@@ -0,0 +1,317 @@
+package hexlet.code.repository;
+
+import hexlet.code.BaseRepository;
+import hexlet.code.model.CheckJob;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+public class CheckJobRepository extends BaseRepository {
+    private static final String SELECT_JOBS = "SELECT j.*, u.name FROM check_jobs j JOIN urls u ON u.id = j.url_id ";
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    // First key of the advisory locks taken per URL, so they cannot collide with other advisory locks
+    private static final int URL_LOCK_SPACE = 0x636a;
+
+    /**
+     * Queues the job unless the number of jobs the submitting instance has queued has reached the capacity.
+     * The capacity is counted per instance, so submissions of different instances never wait for each other;
+     * the caller serializes the submissions of one instance, so that they do not overshoot it.
+     *
+     * @param job the job to queue
+     * @param instanceId the id of the submitting instance
+     * @param capacity the maximum number of jobs queued by the instance
+     * @return true if the job was queued, false if the queue is full
+     */
+    public static boolean insert(CheckJob job, String instanceId, int capacity) throws SQLException {
+        return insert(job, instanceId, capacity, null);
+    }
+
+    /**
+     * Queues the job like {@link #insert(CheckJob, String, int)}, unless its URL already has a job that is
+     * pending or was created since the given moment. Used by the schedulers of all instances,
+     * so that a URL is queued once per scheduling round however many instances run one.
+     * On PostgreSQL the check and the insert run under an advisory lock on the URL, so two instances
+     * scheduling the same URL at once queue it only once.
+     *
+     * @param job the job to queue
+     * @param instanceId the id of the submitting instance
+     * @param capacity the maximum number of jobs queued by the instance
+     * @param dueSince the URL is skipped if it has a job created after this moment
+     * @return true if the job was queued, false if the queue is full or the URL is already covered
+     */
+    public static boolean insertIfDue(CheckJob job, String instanceId, int capacity, Instant dueSince)
+            throws SQLException {
+        return insert(job, instanceId, capacity, dueSince);
+    }
+
+    private static boolean insert(CheckJob job, String instanceId, int capacity, Instant dueSince)
+            throws SQLException {
+        var sql = "INSERT INTO check_jobs (id, url_id, instance_id, status, attempts, run_at, created_at, updated_at)"
+                + " SELECT ?, ?, ?, 'QUEUED', 0, CAST(? AS TIMESTAMP), CAST(? AS TIMESTAMP), CAST(? AS TIMESTAMP)"
+                + " FROM (SELECT COUNT(*) AS queued FROM check_jobs WHERE instance_id = ? AND status = 'QUEUED') q"
+                + " WHERE q.queued < ?"
+                + (dueSince == null ? "" : " AND NOT EXISTS (SELECT 1 FROM check_jobs j WHERE j.url_id = ?"
+                + " AND (j.status IN ('QUEUED', 'RUNNING') OR j.created_at > ?))");
+        try (var conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (var preparedStatement = conn.prepareStatement(sql)) {
+                if (dueSince != null && isPostgres(conn)) {
+                    lockUrl(conn, job.getUrlId());
+                }
+                var now = Timestamp.from(Instant.now());
+                preparedStatement.setString(1, job.getId());
+                preparedStatement.setInt(2, job.getUrlId());
+                preparedStatement.setString(3, instanceId);
+                preparedStatement.setTimestamp(4, now);
+                preparedStatement.setTimestamp(5, now);
+                preparedStatement.setTimestamp(6, now);
+                preparedStatement.setString(7, instanceId);
+                preparedStatement.setInt(8, capacity);
+                if (dueSince != null) {
+                    preparedStatement.setInt(9, job.getUrlId());
+                    preparedStatement.setTimestamp(10, Timestamp.from(dueSince));
+                }
+                boolean inserted = preparedStatement.executeUpdate() == 1;
+                conn.commit();
+                return inserted;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Claims up to {@code limit} due jobs: queued jobs whose backoff has passed and running jobs whose
+     * lease has expired. Claimed jobs are marked running under a new lease and their attempt counter
+     * is increased. PostgreSQL skips the rows locked by other instances instead of waiting for them,
+     * so instances never queue up behind each other; the embedded H2 database serves a single instance
+     * and simply waits for the lock.
+     *
+     * @param limit the maximum number of jobs to claim
+     * @param lease how long the claim is valid
+     * @param maxAttempts jobs that have been attempted this many times are not claimed again
+     * @return the claimed jobs
+     */
+    public static List<CheckJob> claim(int limit, Duration lease, int maxAttempts) throws SQLException {
+        var now = Instant.now();
+        try (var conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                var selectSql = "SELECT id FROM check_jobs"
+                        + " WHERE ((status = 'QUEUED' AND run_at <= ?) OR (status = 'RUNNING' AND lease_until < ?))"
+                        + " AND attempts < ? ORDER BY run_at LIMIT ? FOR UPDATE"
+                        + (isPostgres(conn) ? " SKIP LOCKED" : "");
+                var ids = new ArrayList<String>();
+                try (var preparedStatement = conn.prepareStatement(selectSql)) {
+                    preparedStatement.setTimestamp(1, Timestamp.from(now));
+                    preparedStatement.setTimestamp(2, Timestamp.from(now));
+                    preparedStatement.setInt(3, maxAttempts);
+                    preparedStatement.setInt(4, limit);
+                    var resultSet = preparedStatement.executeQuery();
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getString("id"));
+                    }
+                }
+                if (ids.isEmpty()) {
+                    conn.rollback();
+                    return List.of();
+                }
+
+                var updateSql = "UPDATE check_jobs SET status = 'RUNNING', attempts = attempts + 1,"
+                        + " lease_until = ?, updated_at = ? WHERE id IN " + placeholders(ids.size());
+                try (var preparedStatement = conn.prepareStatement(updateSql)) {
+                    preparedStatement.setTimestamp(1, Timestamp.from(now.plus(lease)));
+                    preparedStatement.setTimestamp(2, Timestamp.from(now));
+                    for (int i = 0; i < ids.size(); i++) {
+                        preparedStatement.setString(i + 3, ids.get(i));
+                    }
+                    preparedStatement.executeUpdate();
+                }
+
+                var jobs = findByIds(conn, ids);
+                conn.commit();
+                return jobs;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Marks the job done, provided this attempt still holds it. An attempt whose lease expired
+     * loses the job to the next claimer, and its result is then not recorded on the job.
+     *
+     * @return true if the job was marked done
+     */
+    public static boolean complete(CheckJob job, int checkId) throws SQLException {
+        var sql = "UPDATE check_jobs SET status = 'DONE', check_id = ?, lease_until = NULL, error = NULL,"
+                + " updated_at = ? WHERE id = ? AND status = 'RUNNING' AND attempts = ?";
+        try (var conn = dataSource.getConnection();
+             var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setInt(1, checkId);
+            preparedStatement.setTimestamp(2, Timestamp.from(Instant.now()));
+            preparedStatement.setString(3, job.getId());
+            preparedStatement.setInt(4, job.getAttempts());
+            return preparedStatement.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Puts the job back on the queue to be claimed again at the given time, provided this attempt
+     * still holds it.
+     *
+     * @return true if the job was queued again
+     */
+    public static boolean retry(CheckJob job, Instant runAt, String error) throws SQLException {
+        var sql = "UPDATE check_jobs SET status = 'QUEUED', run_at = ?, lease_until = NULL, error = ?,"
+                + " updated_at = ? WHERE id = ? AND status = 'RUNNING' AND attempts = ?";
+        try (var conn = dataSource.getConnection();
+             var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setTimestamp(1, Timestamp.from(runAt));
+            preparedStatement.setString(2, truncate(error));
+            preparedStatement.setTimestamp(3, Timestamp.from(Instant.now()));
+            preparedStatement.setString(4, job.getId());
+            preparedStatement.setInt(5, job.getAttempts());
+            return preparedStatement.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Marks the job failed for good, provided this attempt still holds it. Failed jobs are kept
+     * in the table as a dead letter.
+     *
+     * @return true if the job was marked failed
+     */
+    public static boolean fail(CheckJob job, String error) throws SQLException {
+        var sql = "UPDATE check_jobs SET status = 'FAILED', lease_until = NULL, error = ?, updated_at = ?"
+                + " WHERE id = ? AND status = 'RUNNING' AND attempts = ?";
+        try (var conn = dataSource.getConnection();
+             var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, truncate(error));
+            preparedStatement.setTimestamp(2, Timestamp.from(Instant.now()));
+            preparedStatement.setString(3, job.getId());
+            preparedStatement.setInt(4, job.getAttempts());
+            return preparedStatement.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * Dead-letters running jobs whose lease expired on their last allowed attempt,
+     * which the claim query no longer picks up.
+     *
+     * @return the number of jobs marked failed
+     */
+    public static int failExpired(int maxAttempts) throws SQLException {
+        var sql = "UPDATE check_jobs SET status = 'FAILED', lease_until = NULL, error = 'Lease expired',"
+                + " updated_at = ? WHERE status = 'RUNNING' AND lease_until < ? AND attempts >= ?";
+        try (var conn = dataSource.getConnection();
+             var preparedStatement = conn.prepareStatement(sql)) {
+            var now = Timestamp.from(Instant.now());
+            preparedStatement.setTimestamp(1, now);
+            preparedStatement.setTimestamp(2, now);
+            preparedStatement.setInt(3, maxAttempts);
+            return preparedStatement.executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes the jobs in the given final state that were last updated before the given moment.
+     *
+     * @return the number of jobs deleted
+     */
+    public static int deleteFinishedBefore(CheckJob.Status status, Instant before) throws SQLException {
+        var sql = "DELETE FROM check_jobs WHERE status = ? AND updated_at < ?";
+        try (var conn = dataSource.getConnection();
+             var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, status.name());
+            preparedStatement.setTimestamp(2, Timestamp.from(before));
+            return preparedStatement.executeUpdate();
+        }
+    }
+
+    public static Optional<CheckJob> findById(String id) throws SQLException {
+        try (var conn = dataSource.getConnection()) {
+            return findByIds(conn, List.of(id)).stream().findFirst();
+        }
+    }
+
+    public static int countByStatus(CheckJob.Status... statuses) throws SQLException {
+        var sql = "SELECT COUNT(*) FROM check_jobs WHERE status IN " + placeholders(statuses.length);
+        try (var conn = dataSource.getConnection();
+             var preparedStatement = conn.prepareStatement(sql)) {
+            for (int i = 0; i < statuses.length; i++) {
+                preparedStatement.setString(i + 1, statuses[i].name());
+            }
+            var resultSet = preparedStatement.executeQuery();
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    public static int countQueuedBy(String instanceId) throws SQLException {
+        var sql = "SELECT COUNT(*) FROM check_jobs WHERE instance_id = ? AND status = 'QUEUED'";
+        try (var conn = dataSource.getConnection();
+             var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setString(1, instanceId);
+            var resultSet = preparedStatement.executeQuery();
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static List<CheckJob> findByIds(Connection conn, List<String> ids) throws SQLException {
+        var sql = SELECT_JOBS + "WHERE j.id IN " + placeholders(ids.size());
+        try (var preparedStatement = conn.prepareStatement(sql)) {
+            for (int i = 0; i < ids.size(); i++) {
+                preparedStatement.setString(i + 1, ids.get(i));
+            }
+            var resultSet = preparedStatement.executeQuery();
+            var jobs = new ArrayList<CheckJob>();
+            while (resultSet.next()) {
+                jobs.add(buildJob(resultSet));
+            }
+            return jobs;
+        }
+    }
+
+    private static CheckJob buildJob(ResultSet resultSet) throws SQLException {
+        int checkId = resultSet.getInt("check_id");
+        Integer storedCheckId = resultSet.wasNull() ? null : checkId;
+        return new CheckJob(
+                resultSet.getString("id"),
+                resultSet.getInt("url_id"),
+                resultSet.getString("name"),
+                CheckJob.Status.valueOf(resultSet.getString("status")),
+                resultSet.getInt("attempts"),
+                storedCheckId,
+                resultSet.getString("error"));
+    }
+
+    private static void lockUrl(Connection conn, int urlId) throws SQLException {
+        try (var preparedStatement = conn.prepareStatement("SELECT pg_advisory_xact_lock(?, ?)")) {
+            preparedStatement.setInt(1, URL_LOCK_SPACE);
+            preparedStatement.setInt(2, urlId);
+            preparedStatement.executeQuery().close();
+        }
+    }
+
+    private static String placeholders(int count) {
+        return "(" + String.join(", ", Collections.nCopies(count, "?")) + ")";
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
@@ -0,0 +1,223 @@
+package hexlet.code.repository;
+
+import hexlet.code.BaseRepository;
+import hexlet.code.model.CheckRollup;
+import hexlet.code.model.UrlCheck;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class CheckRollupRepository extends BaseRepository {
+    // Key of the advisory lock held by the instance compacting a batch
+    private static final long COMPACTION_LOCK = 0x636b_726f_6c6cL;
+
+    private record RollupKey(int urlId, LocalDate day) {
+    }
+
+    /**
+     * Folds the oldest raw checks made before the cutoff into the daily rollups and deletes them,
+     * all in one short transaction. The latest check of every URL is kept, whatever its age.
+     * Batches run one at a time across all instances, so they are folded strictly in id order,
+     * which the title change count relies on, and never insert the same rollup row at once:
+     * on PostgreSQL a batch holds an advisory lock and instances that cannot take it skip the run,
+     * and the embedded H2 database serves a single instance, whose retention runs on one thread.
+     *
+     * @param cutoff the moment before which raw checks are compacted
+     * @param batchSize the maximum number of raw checks to compact
+     * @return the number of raw checks compacted, 0 when nothing is left to compact
+     *         or another instance is compacting
+     */
+    public static int compactBatch(Instant cutoff, int batchSize) throws SQLException {
+        try (var conn = dataSource.getConnection()) {
+            var sql = UrlCheckRepository.SELECT_CHECKS
+                    + "WHERE c.created_at < ? "
+                    + "AND NOT EXISTS (SELECT 1 FROM urls u WHERE u.last_check_id = c.id) "
+                    + "ORDER BY c.id LIMIT ? "
+                    + (isPostgres(conn) ? "FOR UPDATE OF c" : "FOR UPDATE");
+            conn.setAutoCommit(false);
+            try {
+                if (isPostgres(conn) && !tryLockCompaction(conn)) {
+                    conn.rollback();
+                    return 0;
+                }
+                var checks = new ArrayList<UrlCheck>();
+                var contentIds = new LinkedHashSet<Integer>();
+                try (var preparedStatement = conn.prepareStatement(sql)) {
+                    preparedStatement.setTimestamp(1, Timestamp.from(cutoff));
+                    preparedStatement.setInt(2, batchSize);
+                    var resultSet = preparedStatement.executeQuery();
+                    while (resultSet.next()) {
+                        checks.add(UrlCheckRepository.buildCheck(resultSet));
+                        contentIds.add(resultSet.getInt("content_id"));
+                    }
+                }
+                if (checks.isEmpty()) {
+                    conn.rollback();
+                    return 0;
+                }
+
+                var rollups = new LinkedHashMap<RollupKey, CheckRollup>();
+                for (var check : checks) {
+                    var day = LocalDate.ofInstant(check.getCreatedAt(), ZoneOffset.UTC);
+                    var key = new RollupKey(check.getUrlId(), day);
+                    rollups.computeIfAbsent(key, k -> new CheckRollup(k.urlId(), k.day())).add(check);
+                }
+                mergeRollups(conn, rollups.values());
+                int deleted = deleteChecks(conn, checks);
+                if (deleted != checks.size()) {
+                    throw new SQLException("Compacted " + checks.size() + " checks but deleted " + deleted
+                            + ", some of them were deleted meanwhile");
+                }
+                deleteOrphanedContents(conn, contentIds);
+
+                conn.commit();
+                return checks.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    public static List<CheckRollup> findByUrlId(int urlId, LocalDate fromDay) throws SQLException {
+        try (var conn = getReadConnection()) {
+            return findByUrlId(conn, urlId, fromDay);
+        }
+    }
+
+    static List<CheckRollup> findByUrlId(Connection conn, int urlId, LocalDate fromDay) throws SQLException {
+        var sql = "SELECT * FROM check_rollups WHERE url_id = ? AND day >= ? ORDER BY day";
+        try (var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setInt(1, urlId);
+            preparedStatement.setDate(2, Date.valueOf(fromDay));
+            var resultSet = preparedStatement.executeQuery();
+            var result = new ArrayList<CheckRollup>();
+            while (resultSet.next()) {
+                result.add(buildRollup(resultSet));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Adds the rollups to the stored ones with an UPDATE, inserting the rows that do not exist yet.
+     * Batches are compacted one at a time in id order, so the given rollups always follow the stored
+     * ones in time and no other batch inserts the missing rows meanwhile.
+     */
+    private static void mergeRollups(Connection conn, Iterable<CheckRollup> rollups) throws SQLException {
+        var updateSql = "UPDATE check_rollups SET check_count = check_count + ?, status_2xx = status_2xx + ?,"
+                + " status_3xx = status_3xx + ?, status_4xx = status_4xx + ?, status_5xx = status_5xx + ?,"
+                + " status_other = status_other + ?,"
+                + " title_changes = title_changes + ? + CASE WHEN last_title IS DISTINCT FROM ? THEN 1 ELSE 0 END,"
+                + " last_title = ? WHERE url_id = ? AND day = ?";
+        var insertSql = "INSERT INTO check_rollups (url_id, day, check_count, status_2xx, status_3xx, status_4xx,"
+                + " status_5xx, status_other, first_title, last_title, title_changes)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        var missing = new ArrayList<CheckRollup>();
+        try (var preparedStatement = conn.prepareStatement(updateSql)) {
+            var batch = new ArrayList<CheckRollup>();
+            for (var rollup : rollups) {
+                preparedStatement.setInt(1, rollup.getCheckCount());
+                preparedStatement.setInt(2, rollup.getStatus2xx());
+                preparedStatement.setInt(3, rollup.getStatus3xx());
+                preparedStatement.setInt(4, rollup.getStatus4xx());
+                preparedStatement.setInt(5, rollup.getStatus5xx());
+                preparedStatement.setInt(6, rollup.getStatusOther());
+                preparedStatement.setInt(7, rollup.getTitleChanges());
+                preparedStatement.setString(8, rollup.getFirstTitle());
+                preparedStatement.setString(9, rollup.getLastTitle());
+                preparedStatement.setInt(10, rollup.getUrlId());
+                preparedStatement.setDate(11, Date.valueOf(rollup.getDay()));
+                preparedStatement.addBatch();
+                batch.add(rollup);
+            }
+            var updated = preparedStatement.executeBatch();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    missing.add(batch.get(i));
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        try (var preparedStatement = conn.prepareStatement(insertSql)) {
+            for (var rollup : missing) {
+                preparedStatement.setInt(1, rollup.getUrlId());
+                preparedStatement.setDate(2, Date.valueOf(rollup.getDay()));
+                preparedStatement.setInt(3, rollup.getCheckCount());
+                preparedStatement.setInt(4, rollup.getStatus2xx());
+                preparedStatement.setInt(5, rollup.getStatus3xx());
+                preparedStatement.setInt(6, rollup.getStatus4xx());
+                preparedStatement.setInt(7, rollup.getStatus5xx());
+                preparedStatement.setInt(8, rollup.getStatusOther());
+                preparedStatement.setString(9, rollup.getFirstTitle());
+                preparedStatement.setString(10, rollup.getLastTitle());
+                preparedStatement.setInt(11, rollup.getTitleChanges());
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+        }
+    }
+
+    private static int deleteChecks(Connection conn, List<UrlCheck> checks) throws SQLException {
+        var sql = "DELETE FROM url_checks WHERE id IN ("
+                + String.join(", ", Collections.nCopies(checks.size(), "?")) + ")";
+        try (var preparedStatement = conn.prepareStatement(sql)) {
+            for (int i = 0; i < checks.size(); i++) {
+                preparedStatement.setInt(i + 1, checks.get(i).getId());
+            }
+            return preparedStatement.executeUpdate();
+        }
+    }
+
+    private static boolean tryLockCompaction(Connection conn) throws SQLException {
+        try (var preparedStatement = conn.prepareStatement("SELECT pg_try_advisory_xact_lock(?)")) {
+            preparedStatement.setLong(1, COMPACTION_LOCK);
+            var resultSet = preparedStatement.executeQuery();
+            resultSet.next();
+            return resultSet.getBoolean(1);
+        }
+    }
+
+    private static CheckRollup buildRollup(ResultSet resultSet) throws SQLException {
+        var rollup = new CheckRollup(resultSet.getInt("url_id"), resultSet.getDate("day").toLocalDate());
+        rollup.setCheckCount(resultSet.getInt("check_count"));
+        rollup.setStatus2xx(resultSet.getInt("status_2xx"));
+        rollup.setStatus3xx(resultSet.getInt("status_3xx"));
+        rollup.setStatus4xx(resultSet.getInt("status_4xx"));
+        rollup.setStatus5xx(resultSet.getInt("status_5xx"));
+        rollup.setStatusOther(resultSet.getInt("status_other"));
+        rollup.setFirstTitle(resultSet.getString("first_title"));
+        rollup.setLastTitle(resultSet.getString("last_title"));
+        rollup.setTitleChanges(resultSet.getInt("title_changes"));
+        return rollup;
+    }
+
+    private static void deleteOrphanedContents(Connection conn, Set<Integer> contentIds) throws SQLException {
+        var sql = "DELETE FROM check_contents WHERE id IN ("
+                + String.join(", ", Collections.nCopies(contentIds.size(), "?")) + ")"
+                + " AND NOT EXISTS (SELECT 1 FROM url_checks c WHERE c.content_id = check_contents.id)";
+        try (var preparedStatement = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (var contentId : contentIds) {
+                preparedStatement.setInt(index++, contentId);
+            }
+            preparedStatement.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package hexlet.code.repository;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a streamed query one at a time, while the result set is still open.
+ */
+@FunctionalInterface
+public interface RowHandler<T> {
+    void handle(T row) throws IOException;
+}
@@ -0,0 +1,164 @@
+package hexlet.code.repository;
+
+import hexlet.code.model.Url;
+import hexlet.code.model.UrlCheck;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Size-bounded LRU cache of URL summaries (the URL row with its latest check), keyed by id,
+ * with a name to id index. Cached objects are copied on the way in and out, so callers are
+ * free to mutate what they get. Guarded by a {@link ReentrantLock} rather than a monitor, so
+ * virtual threads waiting for it do not pin their carrier thread.
+ */
+public class UrlCache {
+    public record Stats(long hits, long misses, long evictions, int size) {
+    }
+
+    private final Map<Integer, Url> byId;
+    private final Map<String, Integer> idsByName;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public UrlCache(int maxSize) {
+        this.idsByName = new HashMap<>();
+        this.byId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Url> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                idsByName.remove(eldest.getValue().getName());
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    public Optional<Url> getById(int id) {
+        Url cached;
+        lock.lock();
+        try {
+            cached = copyOf(byId.get(id));
+        } finally {
+            lock.unlock();
+        }
+        return record(cached);
+    }
+
+    public Optional<Url> getByName(String name) {
+        Url cached;
+        lock.lock();
+        try {
+            var id = idsByName.get(name);
+            cached = id != null ? copyOf(byId.get(id)) : null;
+        } finally {
+            lock.unlock();
+        }
+        return record(cached);
+    }
+
+    /**
+     * Caches the URL summary unless the cached one has a newer check, as a summary read
+     * from a lagging replica may.
+     */
+    public void put(Url url) {
+        lock.lock();
+        try {
+            var cached = byId.get(url.getId());
+            if (cached != null && cached.getLastCheckAt() != null
+                    && (url.getLastCheckAt() == null || cached.getLastCheckAt().isAfter(url.getLastCheckAt()))) {
+                return;
+            }
+            byId.put(url.getId(), copyOf(url));
+            idsByName.put(url.getName(), url.getId());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates the cached summary of the check's URL with the check's fields.
+     * Does nothing if the URL is not cached or already has a newer check.
+     */
+    public void updateLatestCheck(UrlCheck check) {
+        lock.lock();
+        try {
+            var cached = byId.get(check.getUrlId());
+            if (cached != null && (cached.getLastCheckAt() == null
+                    || !cached.getLastCheckAt().isAfter(check.getCreatedAt()))) {
+                cached.setStatusCode(check.getStatusCode());
+                cached.setTitle(check.getTitle());
+                cached.setH1(check.getH1());
+                cached.setDescription(check.getDescription());
+                cached.setLastCheckAt(check.getCreatedAt());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(int id) {
+        lock.lock();
+        try {
+            var removed = byId.remove(id);
+            if (removed != null) {
+                idsByName.remove(removed.getName());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            byId.clear();
+            idsByName.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        lock.lock();
+        try {
+            size = byId.size();
+        } finally {
+            lock.unlock();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    private Optional<Url> record(Url cached) {
+        if (cached == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(cached);
+    }
+
+    private static Url copyOf(Url url) {
+        if (url == null) {
+            return null;
+        }
+        var copy = new Url(url.getName());
+        copy.setId(url.getId());
+        copy.setCreatedAt(url.getCreatedAt());
+        copy.setStatusCode(url.getStatusCode());
+        copy.setTitle(url.getTitle());
+        copy.setH1(url.getH1());
+        copy.setDescription(url.getDescription());
+        copy.setLastCheckAt(url.getLastCheckAt());
+        return copy;
+    }
+}
@@ -1,82 +1,277 @@
 package hexlet.code.repository;
 
 import hexlet.code.BaseRepository;
+import hexlet.code.model.CheckRollup;
 import hexlet.code.model.UrlCheck;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 public class UrlCheckRepository extends BaseRepository {
+    static final String SELECT_CHECKS = "SELECT c.*, cc.title, cc.h1, cc.description FROM url_checks c "
+            + "JOIN check_contents cc ON cc.id = c.content_id ";
+
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final int MAX_LAST_MODIFIED_LENGTH = 64;
+
+    /**
+     * Extracted fields shared by consecutive checks of a URL that found the same content.
+     */
+    private static final class Content {
+        private final String hash;
+        private final UrlCheck source;
+        private int id;
+
+        Content(String hash, UrlCheck source) {
+            this.hash = hash;
+            this.source = source;
+        }
+
+        Content(String hash, int id) {
+            this(hash, null);
+            this.id = id;
+        }
+    }
 
     public static void save(UrlCheck urlCheck) throws SQLException {
-        var sql = "INSERT INTO url_checks (url_id, status_code, title, h1, description, created_at)"
+        saveAll(List.of(urlCheck));
+    }
+
+    /**
+     * Inserts all given checks with a single JDBC batch in one transaction, assigns the generated ids
+     * to them and moves the latest check pointers of the affected URLs. A check whose title, h1 and
+     * description equal those of the URL's latest check points at the latest check's content
+     * instead of storing another copy of it. Title and h1 are cut to the width of their columns,
+     * and validators too long to be stored are dropped.
+     *
+     * @param urlChecks the checks to insert
+     */
+    public static void saveAll(List<UrlCheck> urlChecks) throws SQLException {
+        if (urlChecks.isEmpty()) {
+            return;
+        }
+        for (var urlCheck : urlChecks) {
+            fitColumns(urlCheck);
+        }
+        var sql = "INSERT INTO url_checks (url_id, status_code, content_id, etag, last_modified, created_at)"
                 + " VALUES (?, ?, ?, ?, ?, ?)";
-        try (var conn = dataSource.getConnection();
-             var preparedStatement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            preparedStatement.setInt(1, urlCheck.getUrlId());
-            preparedStatement.setInt(2, urlCheck.getStatusCode());
-            preparedStatement.setString(3, urlCheck.getTitle());
-            preparedStatement.setString(4, urlCheck.getH1());
-            preparedStatement.setString(5, urlCheck.getDescription());
-
-            Instant now = Instant.now();
-            urlCheck.setCreatedAt(now);
-            preparedStatement.setTimestamp(6, Timestamp.from(now));
-
-            preparedStatement.executeUpdate();
-            var generatedKeys = preparedStatement.getGeneratedKeys();
-            if (generatedKeys.next()) {
-                urlCheck.setId(generatedKeys.getInt(1));
-            } else {
-                throw new SQLException("Failed to save URL check, no ID obtained.");
+        var latestByUrl = new HashMap<Integer, UrlCheck>();
+        try (var conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                var contents = resolveContents(conn, urlChecks);
+
+                try (var preparedStatement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                    Instant now = Instant.now();
+                    for (int i = 0; i < urlChecks.size(); i++) {
+                        var urlCheck = urlChecks.get(i);
+                        if (urlCheck.getCreatedAt() == null) {
+                            urlCheck.setCreatedAt(now);
+                        }
+                        preparedStatement.setInt(1, urlCheck.getUrlId());
+                        preparedStatement.setInt(2, urlCheck.getStatusCode());
+                        preparedStatement.setInt(3, contents[i].id);
+                        preparedStatement.setString(4, urlCheck.getEtag());
+                        preparedStatement.setString(5, urlCheck.getLastModified());
+                        preparedStatement.setTimestamp(6, Timestamp.from(urlCheck.getCreatedAt()));
+                        preparedStatement.addBatch();
+                    }
+                    preparedStatement.executeBatch();
+
+                    var generatedKeys = preparedStatement.getGeneratedKeys();
+                    for (var urlCheck : urlChecks) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Failed to save URL checks, not all IDs obtained.");
+                        }
+                        urlCheck.setId(generatedKeys.getInt(1));
+                        latestByUrl.merge(urlCheck.getUrlId(), urlCheck,
+                                (current, candidate) -> candidate.getId() > current.getId() ? candidate : current);
+                    }
+                }
+
+                updateLatestChecks(conn, latestByUrl.values());
+                conn.commit();
+                UrlRepository.bumpListingVersion(conn);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
             }
         }
+        for (var urlCheck : latestByUrl.values()) {
+            UrlRepository.updateCachedLatestCheck(urlCheck);
+        }
     }
 
-    public static Optional<UrlCheck> findById(int id) throws SQLException {
-        var sql = "SELECT * FROM url_checks WHERE id = ?";
-        try (var conn = dataSource.getConnection();
-             var preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setInt(1, id);
+    /**
+     * Finds or inserts the content row of every check, in the order of the checks.
+     */
+    private static Content[] resolveContents(Connection conn, List<UrlCheck> urlChecks) throws SQLException {
+        var latest = findLatestContents(conn, urlChecks);
+        var contents = new Content[urlChecks.size()];
+        var created = new ArrayList<Content>();
+
+        for (int i = 0; i < urlChecks.size(); i++) {
+            var urlCheck = urlChecks.get(i);
+            var hash = contentHash(urlCheck);
+            var content = latest.get(urlCheck.getUrlId());
+            if (content == null || !content.hash.equals(hash)) {
+                content = new Content(hash, urlCheck);
+                created.add(content);
+                latest.put(urlCheck.getUrlId(), content);
+            }
+            contents[i] = content;
+        }
+
+        if (!created.isEmpty()) {
+            insertContents(conn, created);
+        }
+        return contents;
+    }
+
+    private static Map<Integer, Content> findLatestContents(Connection conn, List<UrlCheck> urlChecks)
+            throws SQLException {
+        var urlIds = new ArrayList<>(new LinkedHashSet<>(urlChecks.stream().map(UrlCheck::getUrlId).toList()));
+        var sql = "SELECT u.id AS url_id, cc.id, cc.hash FROM urls u "
+                + "JOIN url_checks c ON c.id = u.last_check_id "
+                + "JOIN check_contents cc ON cc.id = c.content_id "
+                + "WHERE u.id IN (" + String.join(", ", Collections.nCopies(urlIds.size(), "?")) + ")";
+        try (var preparedStatement = conn.prepareStatement(sql)) {
+            for (int i = 0; i < urlIds.size(); i++) {
+                preparedStatement.setInt(i + 1, urlIds.get(i));
+            }
             var resultSet = preparedStatement.executeQuery();
-            if (resultSet.next()) {
-                var urlCheck = new UrlCheck();
-                urlCheck.setId(resultSet.getInt("id"));
-                urlCheck.setUrlId(resultSet.getInt("url_id"));
-                urlCheck.setStatusCode(resultSet.getInt("status_code"));
-                urlCheck.setTitle(resultSet.getString("title"));
-                urlCheck.setH1(resultSet.getString("h1"));
-                urlCheck.setDescription(resultSet.getString("description"));
-                urlCheck.setCreatedAt(resultSet.getTimestamp("created_at").toInstant());
-                return Optional.of(urlCheck);
+            var result = new HashMap<Integer, Content>();
+            while (resultSet.next()) {
+                var content = new Content(resultSet.getString("hash"), resultSet.getInt("id"));
+                result.put(resultSet.getInt("url_id"), content);
             }
-            return Optional.empty();
+            return result;
         }
     }
 
+    private static void insertContents(Connection conn, List<Content> contents) throws SQLException {
+        var sql = "INSERT INTO check_contents (hash, title, h1, description) VALUES (?, ?, ?, ?)";
+        try (var preparedStatement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (var content : contents) {
+                preparedStatement.setString(1, content.hash);
+                preparedStatement.setString(2, content.source.getTitle());
+                preparedStatement.setString(3, content.source.getH1());
+                preparedStatement.setString(4, content.source.getDescription());
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+
+            var generatedKeys = preparedStatement.getGeneratedKeys();
+            for (var content : contents) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("Failed to save check contents, not all IDs obtained.");
+                }
+                content.id = generatedKeys.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Cuts the title and h1 to their column length and drops validators too long to store.
+     */
+    private static void fitColumns(UrlCheck urlCheck) {
+        urlCheck.setTitle(truncate(urlCheck.getTitle()));
+        urlCheck.setH1(truncate(urlCheck.getH1()));
+        // A cut validator would never match the page again, so it is not worth storing
+        if (urlCheck.getEtag() != null && urlCheck.getEtag().length() > MAX_TEXT_LENGTH) {
+            urlCheck.setEtag(null);
+        }
+        if (urlCheck.getLastModified() != null && urlCheck.getLastModified().length() > MAX_LAST_MODIFIED_LENGTH) {
+            urlCheck.setLastModified(null);
+        }
+    }
+
+    // Never splits a surrogate pair, which would leave half a character at the end
+    private static String truncate(String value) {
+        if (value == null || value.length() <= MAX_TEXT_LENGTH) {
+            return value;
+        }
+        int end = Character.isHighSurrogate(value.charAt(MAX_TEXT_LENGTH - 1)) ? MAX_TEXT_LENGTH - 1 : MAX_TEXT_LENGTH;
+        return value.substring(0, end);
+    }
+
+    /**
+     * Hashes the extracted fields of the check. Null and empty fields hash differently, so a
+     * reused content row reads back exactly as the check was extracted.
+     */
+    static String contentHash(UrlCheck urlCheck) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (var field : new String[] {urlCheck.getTitle(), urlCheck.getH1(), urlCheck.getDescription()}) {
+            digest.update(field == null ? (byte) 0 : (byte) 1);
+            if (field != null) {
+                digest.update(field.getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void updateLatestChecks(Connection conn, Collection<UrlCheck> latestChecks) throws SQLException {
+        try (var preparedStatement = conn.prepareStatement(UrlRepository.UPDATE_LATEST_CHECK_SQL)) {
+            for (var urlCheck : latestChecks) {
+                preparedStatement.setInt(1, urlCheck.getId());
+                preparedStatement.setInt(2, urlCheck.getUrlId());
+                preparedStatement.setInt(3, urlCheck.getId());
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+        }
+    }
+
+    public static Optional<UrlCheck> findById(int id) throws SQLException {
+        var sql = SELECT_CHECKS + "WHERE c.id = ?";
+        return findOnReader(conn -> {
+            try (var preparedStatement = conn.prepareStatement(sql)) {
+                preparedStatement.setInt(1, id);
+                var resultSet = preparedStatement.executeQuery();
+                if (resultSet.next()) {
+                    var urlCheck = buildCheck(resultSet);
+                    return Optional.of(urlCheck);
+                }
+                return Optional.empty();
+            }
+        });
+    }
+
     public static List<UrlCheck> findByUrlId(int urlId) throws SQLException {
-        var sql = "SELECT * FROM url_checks WHERE url_id = ? ORDER BY id DESC";
-        try (var conn = dataSource.getConnection();
+        var sql = SELECT_CHECKS + "WHERE c.url_id = ? ORDER BY c.id DESC";
+        try (var conn = getReadConnection();
              var preparedStatement = conn.prepareStatement(sql)) {
             preparedStatement.setInt(1, urlId);
             var resultSet = preparedStatement.executeQuery();
             var result = new ArrayList<UrlCheck>();
             while (resultSet.next()) {
-                var urlCheck = new UrlCheck();
-                urlCheck.setId(resultSet.getInt("id"));
-                urlCheck.setUrlId(resultSet.getInt("url_id"));
-                urlCheck.setStatusCode(resultSet.getInt("status_code"));
-                urlCheck.setTitle(resultSet.getString("title"));
-                urlCheck.setH1(resultSet.getString("h1"));
-                urlCheck.setDescription(resultSet.getString("description"));
-                urlCheck.setCreatedAt(resultSet.getTimestamp("created_at").toInstant());
+                var urlCheck = buildCheck(resultSet);
                 result.add(urlCheck);
             }
             return result;
@@ -84,47 +279,127 @@ public class UrlCheckRepository extends BaseRepository {
     }
 
     public static Optional<UrlCheck> findLatestByUrlId(int urlId) throws SQLException {
-        var sql = "SELECT * FROM url_checks WHERE url_id = ? ORDER BY id DESC LIMIT 1";
-        try (var conn = dataSource.getConnection();
+        var sql = SELECT_CHECKS + "WHERE c.url_id = ? ORDER BY c.id DESC LIMIT 1";
+        try (var conn = getReadConnection();
              var preparedStatement = conn.prepareStatement(sql)) {
             preparedStatement.setInt(1, urlId);
             var resultSet = preparedStatement.executeQuery();
             if (resultSet.next()) {
-                var urlCheck = new UrlCheck();
-                urlCheck.setId(resultSet.getInt("id"));
-                urlCheck.setUrlId(resultSet.getInt("url_id"));
-                urlCheck.setStatusCode(resultSet.getInt("status_code"));
-                urlCheck.setTitle(resultSet.getString("title"));
-                urlCheck.setH1(resultSet.getString("h1"));
-                urlCheck.setDescription(resultSet.getString("description"));
-                urlCheck.setCreatedAt(resultSet.getTimestamp("created_at").toInstant());
+                var urlCheck = buildCheck(resultSet);
                 return Optional.of(urlCheck);
             }
             return Optional.empty();
         }
     }
 
+    /**
+     * Streams the checks of the URL in id order, without holding more than one fetch of rows in memory.
+     * The query runs in a read-only transaction so that Postgres uses a cursor.
+     *
+     * @param urlId the URL id
+     * @param afterId only checks with a greater id are returned
+     * @param limit the maximum number of checks to return
+     * @param handler receives every check while the result set is open
+     */
+    public static void streamByUrlId(int urlId, int afterId, int limit, RowHandler<UrlCheck> handler)
+            throws SQLException, IOException {
+        var sql = SELECT_CHECKS + "WHERE c.url_id = ? AND c.id > ? ORDER BY c.id LIMIT ?";
+        try (var conn = getReadConnection()) {
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            try (var preparedStatement = conn.prepareStatement(sql)) {
+                preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+                preparedStatement.setInt(1, urlId);
+                preparedStatement.setInt(2, afterId);
+                preparedStatement.setInt(3, limit);
+                var resultSet = preparedStatement.executeQuery();
+                while (resultSet.next()) {
+                    var urlCheck = buildCheck(resultSet);
+                    handler.handle(urlCheck);
+                }
+            } finally {
+                conn.rollback();
+            }
+        }
+    }
+
+    /**
+     * Returns the daily history of the URL's checks from the given UTC day on. Days whose checks were
+     * compacted by the retention job are read from their rollups, and the checks still kept raw are
+     * summarized on the fly, so the result does not depend on how far compaction has progressed.
+     * Both are read from one snapshot, so a compaction running meanwhile neither drops checks
+     * from the history nor counts them twice.
+     *
+     * @param urlId the URL id
+     * @param fromDay the first day to include
+     * @return one rollup per day with at least one check, ordered by day
+     */
+    public static List<CheckRollup> findDailyHistory(int urlId, LocalDate fromDay) throws SQLException {
+        var sql = SELECT_CHECKS + "WHERE c.url_id = ? AND c.created_at >= ? ORDER BY c.id";
+        try (var conn = getReadConnection()) {
+            // PostgreSQL takes the snapshot in repeatable read, H2 only in its serializable level
+            conn.setTransactionIsolation(isPostgres(conn)
+                    ? Connection.TRANSACTION_REPEATABLE_READ : Connection.TRANSACTION_SERIALIZABLE);
+            conn.setAutoCommit(false);
+            try {
+                var history = new TreeMap<LocalDate, CheckRollup>();
+                for (var rollup : CheckRollupRepository.findByUrlId(conn, urlId, fromDay)) {
+                    history.put(rollup.getDay(), rollup);
+                }
+
+                var raw = new TreeMap<LocalDate, CheckRollup>();
+                try (var preparedStatement = conn.prepareStatement(sql)) {
+                    preparedStatement.setInt(1, urlId);
+                    preparedStatement.setTimestamp(2,
+                            Timestamp.from(fromDay.atStartOfDay(ZoneOffset.UTC).toInstant()));
+                    var resultSet = preparedStatement.executeQuery();
+                    while (resultSet.next()) {
+                        var check = buildCheck(resultSet);
+                        var day = LocalDate.ofInstant(check.getCreatedAt(), ZoneOffset.UTC);
+                        raw.computeIfAbsent(day, d -> new CheckRollup(urlId, d)).add(check);
+                    }
+                }
+                raw.forEach((day, rollup) -> history.merge(day, rollup, (stored, recent) -> {
+                    stored.merge(recent);
+                    return stored;
+                }));
+                return new ArrayList<>(history.values());
+            } finally {
+                conn.rollback();
+            }
+        }
+    }
+
     public static Map<Long, UrlCheck> findLatestChecks() throws SQLException {
-        var sql = "SELECT DISTINCT ON (url_id) * from url_checks order by url_id DESC, id DESC";
-        try (var conn = dataSource.getConnection();
+        var sql = "SELECT c.*, cc.title, cc.h1, cc.description FROM urls u "
+                + "JOIN url_checks c ON c.id = u.last_check_id "
+                + "JOIN check_contents cc ON cc.id = c.content_id";
+        try (var conn = getReadConnection();
              var stmt = conn.prepareStatement(sql)) {
             var resultSet = stmt.executeQuery();
             var result = new HashMap<Long, UrlCheck>();
             while (resultSet.next()) {
-                var id = resultSet.getLong("id");
-                var urlId = resultSet.getLong("url_id");
-                var statusCode = resultSet.getInt("status_code");
-                var title = resultSet.getString("title");
-                var h1 = resultSet.getString("h1");
-                var description = resultSet.getString("description");
-                var createdAt = resultSet.getTimestamp("created_at");
-                var check = new UrlCheck(statusCode, title, h1, description);
-                check.setId((int) id);
-                check.setUrlId((int) urlId);
-                check.setCreatedAt(createdAt.toInstant());
-                result.put(urlId, check);
+                var check = buildCheck(resultSet);
+                result.put((long) check.getUrlId(), check);
             }
             return result;
         }
     }
+
+    /**
+     * Maps a row of {@link #SELECT_CHECKS} or of another query selecting {@code c.*} and the content fields.
+     */
+    static UrlCheck buildCheck(ResultSet resultSet) throws SQLException {
+        var urlCheck = new UrlCheck();
+        urlCheck.setId(resultSet.getInt("id"));
+        urlCheck.setUrlId(resultSet.getInt("url_id"));
+        urlCheck.setStatusCode(resultSet.getInt("status_code"));
+        urlCheck.setTitle(resultSet.getString("title"));
+        urlCheck.setH1(resultSet.getString("h1"));
+        urlCheck.setDescription(resultSet.getString("description"));
+        urlCheck.setEtag(resultSet.getString("etag"));
+        urlCheck.setLastModified(resultSet.getString("last_modified"));
+        urlCheck.setCreatedAt(resultSet.getTimestamp("created_at").toInstant());
+        return urlCheck;
+    }
 }
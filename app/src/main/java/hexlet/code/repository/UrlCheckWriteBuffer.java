@@ -0,0 +1,133 @@
+package hexlet.code.repository;
+
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.UrlCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for URL checks. Checks saved concurrently are collected and written
+ * with {@link UrlCheckRepository#saveAll} once the buffer reaches its batch size or the flush
+ * interval elapses, whichever comes first. If a batch fails, its checks are written one by one,
+ * so a single bad check does not fail the others.
+ */
+public class UrlCheckWriteBuffer {
+    private static final Logger LOG = LoggerFactory.getLogger(UrlCheckWriteBuffer.class);
+
+    private record Pending(UrlCheck check, CompletableFuture<UrlCheck> result) {
+    }
+
+    private final int batchSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ScheduledExecutorService timer;
+    private List<Pending> pending = new ArrayList<>();
+
+    public UrlCheckWriteBuffer(int batchSize, Duration flushInterval) {
+        this.batchSize = batchSize;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "check-write-buffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds the check to the buffer. A full buffer is flushed on the calling thread.
+     *
+     * @param check the check to save
+     * @return a future completed with the saved check, with its id set, once its batch is written
+     */
+    public CompletableFuture<UrlCheck> add(UrlCheck check) {
+        var entry = new Pending(check, new CompletableFuture<>());
+        List<Pending> batch = null;
+
+        lock.lock();
+        try {
+            pending.add(entry);
+            if (pending.size() >= batchSize) {
+                batch = drain();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (batch != null) {
+            write(batch);
+        }
+        return entry.result();
+    }
+
+    /**
+     * Writes everything that is currently buffered.
+     */
+    public void flush() {
+        List<Pending> batch;
+        lock.lock();
+        try {
+            batch = drain();
+        } finally {
+            lock.unlock();
+        }
+        write(batch);
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        flush();
+    }
+
+    private List<Pending> drain() {
+        var batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    private void write(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            save(batch);
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                batch.get(0).result().completeExceptionally(e);
+                return;
+            }
+            LOG.warn("Failed to write {} checks in one batch, writing them one by one: {}", batch.size(),
+                    e.getMessage());
+            for (var entry : batch) {
+                try {
+                    save(List.of(entry));
+                } catch (Exception entryError) {
+                    entry.result().completeExceptionally(entryError);
+                }
+            }
+        }
+    }
+
+    private static void save(List<Pending> batch) throws SQLException {
+        var checks = new ArrayList<UrlCheck>(batch.size());
+        for (var entry : batch) {
+            checks.add(entry.check());
+        }
+
+        long start = System.nanoTime();
+        UrlCheckRepository.saveAll(checks);
+        Metrics.recordCheckPersist(System.nanoTime() - start);
+        for (var entry : batch) {
+            entry.result().complete(entry.check());
+        }
+    }
+}
@@ -1,20 +1,76 @@
 package hexlet.code.repository;
 
 import hexlet.code.BaseRepository;
+import hexlet.code.model.Page;
 import hexlet.code.model.Url;
 import hexlet.code.model.UrlCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 public class UrlRepository extends BaseRepository {
+    private static final Logger LOG = LoggerFactory.getLogger(UrlRepository.class);
+
+    private static final String SELECT_WITH_LATEST_CHECK = "SELECT u.*, c.id as check_id, c.status_code, cc.title, "
+            + "cc.h1, cc.description, c.created_at as check_created_at "
+            + "FROM urls u "
+            + "LEFT JOIN url_checks c ON c.id = u.last_check_id "
+            + "LEFT JOIN check_contents cc ON cc.id = c.content_id ";
+
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    // The update count tells whether the row was inserted; a duplicate writes nothing
+    private static final String INSERT_IF_ABSENT_POSTGRES_SQL = "INSERT INTO urls (name, created_at) VALUES (?, ?)"
+            + " ON CONFLICT (name) DO NOTHING";
+
+    private static final String INSERT_IF_ABSENT_H2_SQL = "INSERT INTO urls (name, created_at)"
+            + " SELECT CAST(? AS VARCHAR(255)), CAST(? AS TIMESTAMP)"
+            + " WHERE NOT EXISTS (SELECT 1 FROM urls WHERE name = ?)";
+
+    private static final String BUMP_LISTING_VERSION_POSTGRES_SQL = "SELECT nextval('url_listing_version')";
+    private static final String BUMP_LISTING_VERSION_H2_SQL = "SELECT NEXT VALUE FOR url_listing_version";
+
+    private static final String LISTING_VERSION_POSTGRES_SQL = "SELECT (SELECT last_value FROM url_listing_version),"
+            + " (SELECT MAX(id) FROM urls), (SELECT MAX(id) FROM url_checks)";
+    private static final String LISTING_VERSION_H2_SQL = "SELECT (SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES"
+            + " WHERE SEQUENCE_NAME = 'URL_LISTING_VERSION'),"
+            + " (SELECT MAX(id) FROM urls), (SELECT MAX(id) FROM url_checks)";
+
+    static final String UPDATE_LATEST_CHECK_SQL = "UPDATE urls SET last_check_id = ?"
+            + " WHERE id = ? AND (last_check_id IS NULL OR last_check_id < ?)";
+
+    private static volatile UrlCache cache = new UrlCache(10_000);
+
+    public static void setCache(UrlCache urlCache) {
+        cache = urlCache;
+    }
+
+    public static UrlCache.Stats getCacheStats() {
+        return cache.stats();
+    }
+
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    static void updateCachedLatestCheck(UrlCheck check) {
+        cache.updateLatestCheck(check);
+    }
 
     public static void save(Url url) throws SQLException {
         var sql = "INSERT INTO urls (name, created_at) VALUES (?, ?)";
@@ -33,195 +89,429 @@ public class UrlRepository extends BaseRepository {
             } else {
                 throw new SQLException("Failed to save URL, no ID obtained.");
             }
+            bumpListingVersion(conn);
         }
+        cache.put(url);
     }
 
-    public static Optional<Url> findById(int id) throws SQLException {
-        var sql = "SELECT u.*, c.id as check_id, c.status_code, c.title, c.h1, c.description, c.created_at"
-                + " as check_created_at "
-                + "FROM urls u "
-                + "LEFT JOIN url_checks c ON u.id = c.url_id AND c.id = ("
-                + "    SELECT MAX(id) FROM url_checks WHERE url_id = u.id"
-                + ") "
-                + "WHERE u.id = ?";
-
-        try (var conn = dataSource.getConnection();
-             var preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setInt(1, id);
-            var resultSet = preparedStatement.executeQuery();
+    /**
+     * Registers the URL unless a URL with the same name exists, with one insert that relies on
+     * the unique index on the name, so concurrent submissions of the same site never race.
+     * The update count of the insert tells whether the URL was created; otherwise the stored row
+     * is looked up, and its id and creation date are copied into the given URL.
+     *
+     * @param url the URL to register
+     * @return true if the URL was inserted, false if it already existed
+     */
+    public static boolean saveIfAbsent(Url url) throws SQLException {
+        var cached = cache.getByName(url.getName());
+        if (cached.isPresent()) {
+            url.setId(cached.get().getId());
+            url.setCreatedAt(cached.get().getCreatedAt());
+            return false;
+        }
 
-            if (resultSet.next()) {
-                var url = new Url();
-                url.setId(resultSet.getInt("id"));
-                url.setName(resultSet.getString("name"));
-                url.setCreatedAt(resultSet.getTimestamp("created_at").toInstant());
+        try {
+            return insertIfAbsent(url);
+        } catch (SQLException e) {
+            // On H2 two inserts may both pass NOT EXISTS, the loser sees the committed row on retry
+            if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                throw e;
+            }
+            return insertIfAbsent(url);
+        }
+    }
 
-                if (resultSet.getObject("check_id") != null) {
-                    url.setStatusCode(resultSet.getInt("status_code"));
-                    url.setTitle(resultSet.getString("title"));
-                    url.setH1(resultSet.getString("h1"));
-                    url.setDescription(resultSet.getString("description"));
-                    url.setLastCheckAt(resultSet.getTimestamp("check_created_at").toInstant());
+    private static boolean insertIfAbsent(Url url) throws SQLException {
+        // Truncated to the precision of the column, so the URL matches the row as it is read back
+        var now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        try (var conn = dataSource.getConnection()) {
+            boolean postgres = isPostgres(conn);
+            var sql = postgres ? INSERT_IF_ABSENT_POSTGRES_SQL : INSERT_IF_ABSENT_H2_SQL;
+            try (var preparedStatement = conn.prepareStatement(sql, new String[] {"id"})) {
+                preparedStatement.setString(1, url.getName());
+                preparedStatement.setTimestamp(2, Timestamp.from(now));
+                if (!postgres) {
+                    preparedStatement.setString(3, url.getName());
+                }
+                if (preparedStatement.executeUpdate() == 1) {
+                    var generatedKeys = preparedStatement.getGeneratedKeys();
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("Failed to save URL, no ID obtained.");
+                    }
+                    url.setId(generatedKeys.getInt(1));
+                    url.setCreatedAt(now);
+                    bumpListingVersion(conn);
+                    cache.put(url);
+                    return true;
                 }
+            }
+        }
 
-                loadChecksForUrl(url);
+        // The conflicting row is committed by now; the reader falls back to the writer if a replica lags
+        var existing = findByName(url.getName())
+                .orElseThrow(() -> new SQLException("URL " + url.getName() + " conflicted but was not found."));
+        url.setId(existing.getId());
+        url.setCreatedAt(existing.getCreatedAt());
+        return false;
+    }
 
-                return Optional.of(url);
+    /**
+     * Inserts the names that are not registered yet with one lookup and one JDBC batch.
+     * If a concurrent insert wins the race for one of the names, the batch is retried once.
+     *
+     * @param names distinct normalized URL names
+     * @return the number of inserted URLs
+     */
+    public static int insertMissing(List<String> names) throws SQLException {
+        if (names.isEmpty()) {
+            return 0;
+        }
+        try {
+            return tryInsertMissing(names);
+        } catch (SQLException e) {
+            if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                throw e;
             }
-            return Optional.empty();
+            return tryInsertMissing(names);
         }
     }
 
-    public static Optional<Url> findByName(String name) throws SQLException {
-        var sql = "SELECT u.*, c.id as check_id, c.status_code, c.title, c.h1, c.description, "
-                + "c.created_at as check_created_at "
-                + "FROM urls u "
-                + "LEFT JOIN url_checks c ON u.id = c.url_id AND c.id = ("
-                + "    SELECT MAX(id) FROM url_checks WHERE url_id = u.id"
-                + ") "
-                + "WHERE u.name = ?";
+    private static int tryInsertMissing(List<String> names) throws SQLException {
+        var selectSql = "SELECT name FROM urls WHERE name IN ("
+                + String.join(", ", Collections.nCopies(names.size(), "?")) + ")";
+        var insertSql = "INSERT INTO urls (name, created_at) VALUES (?, ?)";
+
+        try (var conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                var missing = new LinkedHashSet<>(names);
+                try (var preparedStatement = conn.prepareStatement(selectSql)) {
+                    for (int i = 0; i < names.size(); i++) {
+                        preparedStatement.setString(i + 1, names.get(i));
+                    }
+                    var resultSet = preparedStatement.executeQuery();
+                    while (resultSet.next()) {
+                        missing.remove(resultSet.getString("name"));
+                    }
+                }
 
-        try (var conn = dataSource.getConnection();
-             var preparedStatement = conn.prepareStatement(sql)) {
-            preparedStatement.setString(1, name);
-            var resultSet = preparedStatement.executeQuery();
+                try (var preparedStatement = conn.prepareStatement(insertSql)) {
+                    var now = Timestamp.from(Instant.now());
+                    for (var name : missing) {
+                        preparedStatement.setString(1, name);
+                        preparedStatement.setTimestamp(2, now);
+                        preparedStatement.addBatch();
+                    }
+                    preparedStatement.executeBatch();
+                }
+                conn.commit();
+                if (!missing.isEmpty()) {
+                    bumpListingVersion(conn);
+                }
+                return missing.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
 
-            if (resultSet.next()) {
-                var url = new Url();
-                url.setId(resultSet.getInt("id"));
-                url.setName(resultSet.getString("name"));
-                url.setCreatedAt(resultSet.getTimestamp("created_at").toInstant());
+    public static Optional<Url> findById(int id) throws SQLException {
+        var cached = cache.getById(id);
+        if (cached.isPresent()) {
+            return cached;
+        }
+
+        var sql = SELECT_WITH_LATEST_CHECK + "WHERE u.id = ?";
+
+        var url = findOnReader(conn -> {
+            try (var preparedStatement = conn.prepareStatement(sql)) {
+                preparedStatement.setInt(1, id);
+                var resultSet = preparedStatement.executeQuery();
+                return resultSet.next() ? Optional.of(buildUrl(resultSet)) : Optional.<Url>empty();
+            }
+        });
+        url.ifPresent(cache::put);
+        return url;
+    }
 
-                if (resultSet.getObject("check_id") != null) {
-                    url.setStatusCode(resultSet.getInt("status_code"));
-                    url.setTitle(resultSet.getString("title"));
-                    url.setH1(resultSet.getString("h1"));
-                    url.setDescription(resultSet.getString("description"));
-                    url.setLastCheckAt(resultSet.getTimestamp("check_created_at").toInstant());
+    /**
+     * Loads the URL together with one page of its check history, newest first.
+     * Both queries run on the same reader connection.
+     *
+     * @param id the URL id
+     * @param beforeCheckId return checks with ids less than this one, may be null for the newest checks
+     * @param limit the maximum number of checks to load
+     * @return the URL with its checks and the cursor of the older checks, if any
+     */
+    public static Optional<Url> findByIdWithChecks(int id, Integer beforeCheckId, int limit) throws SQLException {
+        var sql = SELECT_WITH_LATEST_CHECK + "WHERE u.id = ?";
+
+        return findOnReader(conn -> {
+            Url url;
+            try (var preparedStatement = conn.prepareStatement(sql)) {
+                preparedStatement.setInt(1, id);
+                var resultSet = preparedStatement.executeQuery();
+                if (!resultSet.next()) {
+                    return Optional.empty();
                 }
+                url = buildUrl(resultSet);
+            }
+
+            loadChecksForUrl(conn, url, beforeCheckId, limit);
+            return Optional.of(url);
+        });
+    }
+
+    public static Optional<Url> findByName(String name) throws SQLException {
+        var cached = cache.getByName(name);
+        if (cached.isPresent()) {
+            return cached;
+        }
 
-                return Optional.of(url);
+        var sql = SELECT_WITH_LATEST_CHECK + "WHERE u.name = ?";
+
+        var url = findOnReader(conn -> {
+            try (var preparedStatement = conn.prepareStatement(sql)) {
+                preparedStatement.setString(1, name);
+                var resultSet = preparedStatement.executeQuery();
+                return resultSet.next() ? Optional.of(buildUrl(resultSet)) : Optional.<Url>empty();
             }
-            return Optional.empty();
+        });
+        url.ifPresent(cache::put);
+        return url;
+    }
+
+    /**
+     * Returns a token that changes whenever a URL is added or any check is saved. The token combines
+     * a sequence that every such write advances, so it also changes when a write with a lower id commits
+     * last, with the highest ids, because a streaming replica sees sequence advances only every few
+     * dozen calls. It is read from the reader pool, like the listing it validates.
+     */
+    public static String findListingVersion() throws SQLException {
+        try (var conn = getReadConnection();
+             var statement = conn.createStatement()) {
+            var resultSet = statement.executeQuery(isPostgres(conn) ? LISTING_VERSION_POSTGRES_SQL
+                    : LISTING_VERSION_H2_SQL);
+            resultSet.next();
+            return resultSet.getLong(1) + "-" + resultSet.getLong(2) + "-" + resultSet.getLong(3);
         }
     }
 
+    /**
+     * Advances the listing version after a write that changes the listing has committed. Sequences
+     * take no row locks and are not rolled back, so concurrent writers never wait on each other here,
+     * and advancing before the commit could pair the new token with the old listing. A failure is only
+     * logged: the write is already committed, and failing it would make the caller repeat it.
+     */
+    static void bumpListingVersion(Connection conn) {
+        try (var statement = conn.createStatement()) {
+            statement.executeQuery(isPostgres(conn) ? BUMP_LISTING_VERSION_POSTGRES_SQL
+                    : BUMP_LISTING_VERSION_H2_SQL).close();
+        } catch (SQLException e) {
+            LOG.warn("Failed to advance the listing version", e);
+        }
+    }
+
+    /**
+     * Returns a token that changes whenever a check of the URL is saved or compacted away,
+     * or an empty optional if there is no such URL.
+     */
+    public static Optional<String> findViewVersion(int id) throws SQLException {
+        var sql = "SELECT (SELECT MIN(c.id) FROM url_checks c WHERE c.url_id = u.id),"
+                + " (SELECT MAX(c.id) FROM url_checks c WHERE c.url_id = u.id) FROM urls u WHERE u.id = ?";
+
+        return findOnReader(conn -> {
+            try (var preparedStatement = conn.prepareStatement(sql)) {
+                preparedStatement.setInt(1, id);
+                var resultSet = preparedStatement.executeQuery();
+                if (!resultSet.next()) {
+                    return Optional.empty();
+                }
+                return Optional.of(id + "." + resultSet.getLong(1) + "." + resultSet.getLong(2));
+            }
+        });
+    }
+
     public static List<Url> getAll() throws SQLException {
-        var sql = "SELECT u.*, c.id as check_id, c.status_code, c.title, c.h1, c.description,"
-                + " c.created_at as check_created_at "
-                + "FROM urls u "
-                + "LEFT JOIN url_checks c ON u.id = c.url_id AND c.id = ("
-                + "    SELECT MAX(id) FROM url_checks WHERE url_id = u.id"
-                + ") "
-                + "ORDER BY u.id";
+        var sql = SELECT_WITH_LATEST_CHECK + "ORDER BY u.id";
 
-        try (var conn = dataSource.getConnection();
+        try (var conn = getReadConnection();
              var statement = conn.createStatement()) {
             var resultSet = statement.executeQuery(sql);
             var result = new ArrayList<Url>();
 
+            while (resultSet.next()) {
+                result.add(buildUrl(resultSet));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns one page of URLs with their latest check, ordered by id.
+     * The query is bounded by the page size, so its cost does not depend on the size of the table.
+     *
+     * @param afterId return URLs with ids greater than this one, may be null
+     * @param beforeId return URLs with ids less than this one, takes precedence over afterId, may be null
+     * @param limit the page size
+     * @return the page with cursors for the neighbouring pages
+     */
+    public static Page<Url> findPage(Integer afterId, Integer beforeId, int limit) throws SQLException {
+        boolean backward = beforeId != null;
+        var sql = SELECT_WITH_LATEST_CHECK
+                + (backward ? "WHERE u.id < ? ORDER BY u.id DESC " : "WHERE u.id > ? ORDER BY u.id ")
+                + "LIMIT ?";
+
+        try (var conn = getReadConnection();
+             var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setInt(1, backward ? beforeId : (afterId != null ? afterId : 0));
+            preparedStatement.setInt(2, limit + 1);
+            var resultSet = preparedStatement.executeQuery();
+            var result = new ArrayList<Url>();
+
+            while (resultSet.next()) {
+                result.add(buildUrl(resultSet));
+            }
+
+            boolean hasMore = result.size() > limit;
+            if (hasMore) {
+                result.remove(limit);
+            }
+            if (backward) {
+                Collections.reverse(result);
+            }
+            if (result.isEmpty()) {
+                return new Page<>(result, null, null);
+            }
+
+            boolean hasPrev = backward ? hasMore : afterId != null && afterId > 0;
+            boolean hasNext = backward || hasMore;
+            return new Page<>(result,
+                    hasPrev ? result.get(0).getId() : null,
+                    hasNext ? result.get(result.size() - 1).getId() : null);
+        }
+    }
+
+    /**
+     * Returns the next batch of URLs ordered by id, starting right after the given id.
+     * Only the identity columns are loaded, so the cost of a batch does not depend on check history.
+     *
+     * @param afterId the last id of the previous batch, or 0 for the first batch
+     * @param limit the maximum number of URLs to return
+     * @return the URLs of the batch
+     */
+    public static List<Url> findBatchAfter(int afterId, int limit) throws SQLException {
+        var sql = "SELECT id, name, created_at FROM urls WHERE id > ? ORDER BY id LIMIT ?";
+        try (var conn = getReadConnection();
+             var preparedStatement = conn.prepareStatement(sql)) {
+            preparedStatement.setInt(1, afterId);
+            preparedStatement.setInt(2, limit);
+            var resultSet = preparedStatement.executeQuery();
+            var result = new ArrayList<Url>();
+
             while (resultSet.next()) {
                 var url = new Url();
                 url.setId(resultSet.getInt("id"));
                 url.setName(resultSet.getString("name"));
                 url.setCreatedAt(resultSet.getTimestamp("created_at").toInstant());
-
-                if (resultSet.getObject("check_id") != null) {
-                    url.setStatusCode(resultSet.getInt("status_code"));
-                    url.setTitle(resultSet.getString("title"));
-                    url.setH1(resultSet.getString("h1"));
-                    url.setDescription(resultSet.getString("description"));
-                    url.setLastCheckAt(resultSet.getTimestamp("check_created_at").toInstant());
-                }
-
                 result.add(url);
             }
             return result;
         }
     }
 
-    public static void saveCheck(Url url, UrlCheck check) throws SQLException {
-        var sql = "INSERT INTO url_checks (url_id, status_code, title, h1, description, created_at)"
-                + " VALUES (?, ?, ?, ?, ?, ?)";
-        try (var conn = dataSource.getConnection();
-             var preparedStatement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            preparedStatement.setInt(1, url.getId());
-            preparedStatement.setInt(2, check.getStatusCode());
-            preparedStatement.setString(3, check.getTitle());
-            preparedStatement.setString(4, check.getH1());
-            preparedStatement.setString(5, check.getDescription());
-
-            Instant now = Instant.now();
-            check.setCreatedAt(now);
-            preparedStatement.setTimestamp(6, Timestamp.from(now));
-
-            preparedStatement.executeUpdate();
-            var generatedKeys = preparedStatement.getGeneratedKeys();
-            if (generatedKeys.next()) {
-                check.setId(generatedKeys.getInt(1));
-                check.setUrlId(url.getId());
-
-                url.addCheck(check);
-            } else {
-                throw new SQLException("Failed to save URL check, no ID obtained.");
+    /**
+     * Streams the URLs with their latest checks in id order, without holding more than one fetch
+     * of rows in memory. The query runs in a read-only transaction so that Postgres uses a cursor.
+     *
+     * @param afterId only URLs with a greater id are returned
+     * @param limit the maximum number of URLs to return
+     * @param handler receives every URL while the result set is open
+     */
+    public static void streamAfter(int afterId, int limit, RowHandler<Url> handler)
+            throws SQLException, IOException {
+        var sql = SELECT_WITH_LATEST_CHECK + "WHERE u.id > ? ORDER BY u.id LIMIT ?";
+        try (var conn = getReadConnection()) {
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            try (var preparedStatement = conn.prepareStatement(sql)) {
+                preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+                preparedStatement.setInt(1, afterId);
+                preparedStatement.setInt(2, limit);
+                var resultSet = preparedStatement.executeQuery();
+                while (resultSet.next()) {
+                    handler.handle(buildUrl(resultSet));
+                }
+            } finally {
+                conn.rollback();
             }
         }
     }
 
-    private static void loadChecksForUrl(Url url) throws SQLException {
-        var sql = "SELECT * FROM url_checks WHERE url_id = ? ORDER BY id DESC";
-        try (var conn = dataSource.getConnection();
-             var preparedStatement = conn.prepareStatement(sql)) {
+    /**
+     * Inserts the check and moves the URL's latest check pointer to it in one transaction.
+     *
+     * @param url the checked URL, updated with the check's fields
+     * @param check the check to insert
+     */
+    public static void saveCheck(Url url, UrlCheck check) throws SQLException {
+        check.setUrlId(url.getId());
+        check.setCreatedAt(Instant.now());
+        UrlCheckRepository.saveAll(List.of(check));
+        url.addCheck(check);
+    }
+
+    private static void loadChecksForUrl(Connection conn, Url url, Integer beforeCheckId, int limit)
+            throws SQLException {
+        var sql = UrlCheckRepository.SELECT_CHECKS + "WHERE c.url_id = ? AND c.id < ? ORDER BY c.id DESC LIMIT ?";
+        try (var preparedStatement = conn.prepareStatement(sql)) {
             preparedStatement.setInt(1, url.getId());
+            preparedStatement.setInt(2, beforeCheckId != null ? beforeCheckId : Integer.MAX_VALUE);
+            preparedStatement.setInt(3, limit + 1);
             var resultSet = preparedStatement.executeQuery();
 
             List<UrlCheck> checks = new ArrayList<>();
             while (resultSet.next()) {
-                var check = new UrlCheck();
-                check.setId(resultSet.getInt("id"));
-                check.setUrlId(resultSet.getInt("url_id"));
-                check.setStatusCode(resultSet.getInt("status_code"));
-                check.setTitle(resultSet.getString("title"));
-                check.setH1(resultSet.getString("h1"));
-                check.setDescription(resultSet.getString("description"));
-                check.setCreatedAt(resultSet.getTimestamp("created_at").toInstant());
-                checks.add(check);
+                checks.add(UrlCheckRepository.buildCheck(resultSet));
             }
 
+            if (checks.size() > limit) {
+                checks.remove(limit);
+                url.setOlderChecksCursor(checks.get(limit - 1).getId());
+            }
             url.setChecks(checks);
         }
     }
 
+    private static Url buildUrl(ResultSet resultSet) throws SQLException {
+        var url = new Url();
+        url.setId(resultSet.getInt("id"));
+        url.setName(resultSet.getString("name"));
+        url.setCreatedAt(resultSet.getTimestamp("created_at").toInstant());
+
+        if (resultSet.getObject("check_id") != null) {
+            url.setStatusCode(resultSet.getInt("status_code"));
+            url.setTitle(resultSet.getString("title"));
+            url.setH1(resultSet.getString("h1"));
+            url.setDescription(resultSet.getString("description"));
+            url.setLastCheckAt(resultSet.getTimestamp("check_created_at").toInstant());
+        }
+        return url;
+    }
+
     public static Map<Long, Url> findAllWithLatestChecks() throws SQLException {
-        var sql = "SELECT u.id as url_id, u.name, u.created_at, "
-                + "c.id as check_id, c.status_code, c.title, c.h1, c.description, c.created_at as check_created_at "
-                + "FROM urls u "
-                + "LEFT JOIN url_checks c ON u.id = c.url_id AND c.id = ("
-                + "    SELECT MAX(id) FROM url_checks WHERE url_id = u.id"
-                + ") "
-                + "ORDER BY u.id";
+        var sql = SELECT_WITH_LATEST_CHECK + "ORDER BY u.id";
 
-        try (var conn = dataSource.getConnection();
+        try (var conn = getReadConnection();
              var statement = conn.createStatement()) {
             var resultSet = statement.executeQuery(sql);
             var result = new HashMap<Long, Url>();
 
             while (resultSet.next()) {
-                var urlId = resultSet.getLong("url_id");
-                var url = new Url();
-                url.setId((int) urlId);
-                url.setName(resultSet.getString("name"));
-                url.setCreatedAt(resultSet.getTimestamp("created_at").toInstant());
-
-                if (resultSet.getObject("check_id") != null) {
-                    url.setStatusCode(resultSet.getInt("status_code"));
-                    url.setTitle(resultSet.getString("title"));
-                    url.setH1(resultSet.getString("h1"));
-                    url.setDescription(resultSet.getString("description"));
-                    url.setLastCheckAt(resultSet.getTimestamp("check_created_at").toInstant());
-                }
-
-                result.put(urlId, url);
+                var url = buildUrl(resultSet);
+                result.put((long) url.getId(), url);
             }
             return result;
         }
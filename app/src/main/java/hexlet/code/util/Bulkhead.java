@@ -0,0 +1,108 @@
+package hexlet.code.util;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many requests run a handler at once. A few more may wait briefly for a slot; any request
+ * beyond that, or one whose wait runs out, is answered at once with 429 and a {@code Retry-After} header,
+ * so a burst on one route cannot take every server thread and pooled connection from the others.
+ * The body of the rejection is left to the route, which knows whether its caller wants JSON or a page.
+ */
+public class Bulkhead {
+    private final int maxConcurrent;
+    private final int queueDepth;
+    private final Duration maxWait;
+    private final int retryAfterSeconds;
+    private final Semaphore permits;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param maxConcurrent the number of requests that may run the handler at once
+     * @param queueDepth the number of requests that may wait for a free slot
+     * @param maxWait how long a waiting request waits before it is rejected
+     * @param retryAfterSeconds the delay suggested to rejected clients
+     */
+    public Bulkhead(int maxConcurrent, int queueDepth, Duration maxWait, int retryAfterSeconds) {
+        this.maxConcurrent = maxConcurrent;
+        this.queueDepth = queueDepth;
+        this.maxWait = maxWait;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * @param handler the handler to protect
+     * @param rejectionHandler writes the body of a rejected request, after the status and header are set
+     * @return the handler running behind the bulkhead
+     */
+    public Handler wrap(Handler handler, Handler rejectionHandler) {
+        return ctx -> {
+            if (!acquire()) {
+                reject(ctx);
+                rejectionHandler.handle(ctx);
+                return;
+            }
+            try {
+                handler.handle(ctx);
+            } finally {
+                active.decrementAndGet();
+                permits.release();
+            }
+        };
+    }
+
+    /**
+     * Sets the 429 status and the {@code Retry-After} header and counts the request as rejected.
+     * Also used by handlers that find a downstream resource, such as the check queue, full.
+     */
+    public void reject(Context ctx) {
+        rejected.increment();
+        ctx.header(Header.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        ctx.status(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private boolean acquire() throws InterruptedException {
+        if (!permits.tryAcquire()) {
+            if (waiting.incrementAndGet() > queueDepth) {
+                waiting.decrementAndGet();
+                return false;
+            }
+            try {
+                if (!permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+        active.incrementAndGet();
+        return true;
+    }
+}
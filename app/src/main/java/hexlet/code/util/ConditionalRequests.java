@@ -0,0 +1,44 @@
+package hexlet.code.util;
+
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+
+/**
+ * Answers conditional GET requests from a version token that is computed before the page is built,
+ * so a client polling an unchanged page gets an empty 304 without the page queries or the render.
+ * Tokens are prefixed with the server start time, since a new build may render the same data differently.
+ */
+public class ConditionalRequests {
+    private static final String STARTED = Long.toString(System.currentTimeMillis(), 36);
+
+    /**
+     * Sends the ETag of the given version and sets the status to 304 if the client already has it.
+     *
+     * @param ctx the request context
+     * @param version the token of the data shown by the page
+     * @return true if the client's copy is current and nothing else has to be sent
+     */
+    public static boolean isNotModified(Context ctx, String version) {
+        var etag = "W/\"" + STARTED + "-" + version + "\"";
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, "no-cache");
+
+        var ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (var candidate : ifNoneMatch.split(",")) {
+            var tag = candidate.trim();
+            if (tag.equals("*") || opaqueTag(tag).equals(opaqueTag(etag))) {
+                ctx.status(HttpStatus.NOT_MODIFIED);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -0,0 +1,30 @@
+package hexlet.code.util;
+
+import gg.jte.TemplateEngine;
+import gg.jte.output.Utf8ByteOutput;
+import io.javalin.http.Context;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Renders JTE templates straight into the response. Templates are compiled with binary static
+ * content, so their static parts are written as pre-encoded UTF-8 bytes instead of being
+ * encoded again on every render.
+ */
+public class TemplateRenderer {
+    private static final String CONTENT_TYPE = "text/html; charset=utf-8";
+
+    private static volatile TemplateEngine templateEngine;
+
+    public static void setTemplateEngine(TemplateEngine engine) {
+        templateEngine = engine;
+    }
+
+    public static void render(Context ctx, String template, Map<String, Object> model) throws IOException {
+        var output = new Utf8ByteOutput();
+        templateEngine.render(template, model, output);
+        ctx.contentType(CONTENT_TYPE);
+        output.writeTo(ctx.outputStream());
+    }
+}
@@ -0,0 +1,68 @@
+package hexlet.code.util;
+
+import hexlet.code.model.ImportResult;
+import hexlet.code.repository.UrlRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Imports URLs from a newline- or comma-separated stream. The input is read line by line,
+ * and new URLs are written in batches, so only the current batch is kept in memory. Duplicates
+ * within a batch are dropped here, and names already stored are skipped by the batch insert.
+ */
+public class UrlImporter {
+    private static final int BATCH_SIZE = 1000;
+
+    public static ImportResult importFrom(InputStream input) throws IOException, SQLException {
+        var reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        Set<String> batch = new LinkedHashSet<>();
+        int inserted = 0;
+        int duplicates = 0;
+        int invalid = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            for (var field : line.split(",")) {
+                var value = stripQuotes(field.trim());
+                if (value.isEmpty()) {
+                    continue;
+                }
+
+                var normalized = UrlNormalizer.normalize(value);
+                if (normalized.isEmpty()) {
+                    invalid++;
+                } else if (!batch.add(normalized.get())) {
+                    duplicates++;
+                }
+
+                if (batch.size() == BATCH_SIZE) {
+                    int batchInserted = UrlRepository.insertMissing(new ArrayList<>(batch));
+                    inserted += batchInserted;
+                    duplicates += batch.size() - batchInserted;
+                    batch.clear();
+                }
+            }
+        }
+
+        int batchInserted = UrlRepository.insertMissing(new ArrayList<>(batch));
+        inserted += batchInserted;
+        duplicates += batch.size() - batchInserted;
+
+        return new ImportResult(inserted, duplicates, invalid);
+    }
+
+    private static String stripQuotes(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).trim();
+        }
+        return value;
+    }
+}
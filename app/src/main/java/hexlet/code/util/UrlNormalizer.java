@@ -0,0 +1,37 @@
+package hexlet.code.util;
+
+import java.net.URI;
+import java.util.Optional;
+
+public class UrlNormalizer {
+
+    /**
+     * Reduces the given URL to its lower-cased scheme, host and port.
+     *
+     * @param input the URL as entered by the user
+     * @return the normalized URL, or an empty optional if the input is not an absolute URL
+     */
+    public static Optional<String> normalize(String input) {
+        if (input == null) {
+            return Optional.empty();
+        }
+        URI parsedUrl;
+        try {
+            parsedUrl = new URI(input);
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+        if (parsedUrl.getScheme() == null || parsedUrl.getHost() == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(String
+            .format(
+                "%s://%s%s",
+                parsedUrl.getScheme(),
+                parsedUrl.getHost(),
+                parsedUrl.getPort() == -1 ? "" : ":" + parsedUrl.getPort()
+            )
+            .toLowerCase());
+    }
+}
@@ -1,18 +1,74 @@
+DROP TABLE IF EXISTS check_jobs;
+DROP TABLE IF EXISTS check_rollups;
 DROP TABLE IF EXISTS url_checks;
+DROP TABLE IF EXISTS check_contents;
 DROP TABLE IF EXISTS urls;
+DROP SEQUENCE IF EXISTS url_listing_version;
 
 CREATE TABLE urls (
     id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     name VARCHAR(255) NOT NULL,
-    created_at TIMESTAMP
+    created_at TIMESTAMP,
+    last_check_id INTEGER
+);
+
+CREATE UNIQUE INDEX urls_name_idx ON urls (name);
+CREATE INDEX urls_last_check_id_idx ON urls (last_check_id);
+
+CREATE TABLE check_contents (
+    id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    hash CHAR(64) NOT NULL,
+    h1 VARCHAR(255),
+    title VARCHAR(255),
+    description TEXT
 );
 
 CREATE TABLE url_checks (
     id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     url_id INTEGER REFERENCES urls(id),
     status_code INTEGER,
-    h1 VARCHAR(255),
-    title VARCHAR(255),
-    description TEXT,
+    content_id INTEGER NOT NULL REFERENCES check_contents(id),
+    etag VARCHAR(255),
+    last_modified VARCHAR(64),
     created_at TIMESTAMP
-);
\ No newline at end of file
+);
+
+CREATE INDEX url_checks_url_id_idx ON url_checks (url_id, id);
+CREATE INDEX url_checks_content_id_idx ON url_checks (content_id);
+CREATE INDEX url_checks_created_at_idx ON url_checks (created_at);
+
+CREATE TABLE check_rollups (
+    url_id INTEGER NOT NULL REFERENCES urls(id),
+    day DATE NOT NULL,
+    check_count INTEGER NOT NULL,
+    status_2xx INTEGER NOT NULL,
+    status_3xx INTEGER NOT NULL,
+    status_4xx INTEGER NOT NULL,
+    status_5xx INTEGER NOT NULL,
+    status_other INTEGER NOT NULL,
+    first_title VARCHAR(255),
+    last_title VARCHAR(255),
+    title_changes INTEGER NOT NULL,
+    PRIMARY KEY (url_id, day)
+);
+
+CREATE TABLE check_jobs (
+    id VARCHAR(36) PRIMARY KEY,
+    url_id INTEGER NOT NULL REFERENCES urls(id),
+    instance_id VARCHAR(36) NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    attempts INTEGER NOT NULL,
+    run_at TIMESTAMP NOT NULL,
+    lease_until TIMESTAMP,
+    check_id INTEGER,
+    error VARCHAR(1000),
+    created_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX check_jobs_status_run_at_idx ON check_jobs (status, run_at);
+CREATE INDEX check_jobs_status_lease_idx ON check_jobs (status, lease_until);
+CREATE INDEX check_jobs_url_id_idx ON check_jobs (url_id, created_at);
+CREATE INDEX check_jobs_instance_status_idx ON check_jobs (instance_id, status);
+
+CREATE SEQUENCE url_listing_version;
@@ -1,13 +1,30 @@
 package hexlet.code;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import hexlet.code.check.CheckEvents;
+import hexlet.code.check.CheckRetention;
+import hexlet.code.check.CheckScheduler;
+import hexlet.code.check.DatabaseCheckQueue;
+import hexlet.code.check.UrlChecker;
+import hexlet.code.controller.UrlController;
+import hexlet.code.metrics.Metrics;
+import hexlet.code.model.CheckJob;
 import hexlet.code.model.Url;
 import hexlet.code.model.UrlCheck;
+import hexlet.code.repository.CheckJobRepository;
+import hexlet.code.repository.UrlCache;
 import hexlet.code.repository.UrlCheckRepository;
+import hexlet.code.repository.UrlCheckWriteBuffer;
 import hexlet.code.repository.UrlRepository;
+import hexlet.code.util.Bulkhead;
 import io.javalin.Javalin;
 import okhttp3.FormBody;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -18,10 +35,22 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TestClass {
@@ -76,9 +105,13 @@ class TestClass {
     void beforeEach() throws SQLException {
         try (var conn = hexlet.code.BaseRepository.dataSource.getConnection();
              var statement = conn.createStatement()) {
+            statement.execute("DELETE FROM check_jobs");
+            statement.execute("DELETE FROM check_rollups");
             statement.execute("DELETE FROM url_checks");
+            statement.execute("DELETE FROM check_contents");
             statement.execute("DELETE FROM urls");
         }
+        UrlRepository.clearCache();
     }
 
     @Test
@@ -89,6 +122,7 @@ class TestClass {
 
         try (Response response = client.newCall(request).execute()) {
             assertEquals(200, response.code());
+            assertEquals("text/html; charset=utf-8", response.header("Content-Type"));
             String body = response.body().string();
             assertTrue(body.contains("Анализатор страниц"));
         }
@@ -198,6 +232,70 @@ class TestClass {
         }
     }
 
+    @Test
+    public void testConcurrentUrlCreation() throws Exception {
+        record Registration(int id, boolean inserted) {
+        }
+
+        var name = "https://concurrent.example.com";
+        var start = new CountDownLatch(1);
+        var results = new ArrayList<Future<Registration>>();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    var url = new Url(name);
+                    boolean inserted = UrlRepository.saveIfAbsent(url);
+                    return new Registration(url.getId(), inserted);
+                }));
+            }
+            start.countDown();
+
+            int inserted = 0;
+            for (var result : results) {
+                var registration = result.get(10, TimeUnit.SECONDS);
+                assertEquals(UrlRepository.findByName(name).orElseThrow().getId(), registration.id());
+                inserted += registration.inserted() ? 1 : 0;
+            }
+            assertEquals(1, inserted);
+        }
+        assertEquals(1, UrlRepository.getAll().stream().filter(url -> url.getName().equals(name)).count());
+    }
+
+    @Test
+    public void testImportUrls() throws IOException, SQLException {
+        UrlRepository.save(new Url("https://example.com"));
+
+        var content = """
+                https://example.com/path
+                https://new-site.com
+                "https://other.com", not a url
+
+                https://NEW-site.com/x
+                """;
+        var multipartBody = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("file", "urls.csv", RequestBody.create(content, MediaType.parse("text/csv")))
+                .build();
+
+        Request request = new Request.Builder()
+                .url(baseUrl + "/urls/import")
+                .post(multipartBody)
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            String body = response.body().string();
+            assertTrue(body.contains("\"inserted\":2"));
+            assertTrue(body.contains("\"duplicates\":2"));
+            assertTrue(body.contains("\"invalid\":1"));
+        }
+
+        assertEquals(3, UrlRepository.getAll().size());
+        assertTrue(UrlRepository.findByName("https://new-site.com").isPresent());
+        assertTrue(UrlRepository.findByName("https://other.com").isPresent());
+    }
+
     @Test
     public void testUrlsPage() throws IOException, SQLException {
         var url = new Url();
@@ -215,6 +313,39 @@ class TestClass {
         }
     }
 
+    @Test
+    public void testUrlsPagination() throws IOException, SQLException {
+        for (int i = 1; i <= 3; i++) {
+            UrlRepository.save(new Url("https://example" + i + ".com"));
+        }
+
+        var firstPage = UrlRepository.findPage(null, null, 2);
+        assertEquals(2, firstPage.items().size());
+        assertNull(firstPage.prevCursor());
+        assertNotNull(firstPage.nextCursor());
+
+        var secondPage = UrlRepository.findPage(firstPage.nextCursor(), null, 2);
+        assertEquals(1, secondPage.items().size());
+        assertEquals("https://example3.com", secondPage.items().get(0).getName());
+        assertNull(secondPage.nextCursor());
+
+        var backPage = UrlRepository.findPage(null, secondPage.prevCursor(), 2);
+        assertEquals(firstPage.items().get(0).getId(), backPage.items().get(0).getId());
+        assertNull(backPage.prevCursor());
+
+        Request request = new Request.Builder()
+                .url(baseUrl + "/urls?size=2&after=" + firstPage.nextCursor())
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            String body = response.body().string();
+            assertTrue(body.contains("https://example3.com"));
+            assertFalse(body.contains("https://example1.com"));
+            assertTrue(body.contains("/urls?before=" + secondPage.prevCursor() + "&size=2"));
+        }
+    }
+
     @Test
     public void testSpecificUrlPage() throws IOException, SQLException {
         var url = new Url();
@@ -255,7 +386,52 @@ class TestClass {
     }
 
     @Test
-    public void testUrlCheck() throws IOException, SQLException {
+    public void testConditionalPages() throws IOException, SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+
+        for (var path : List.of("/urls", "/urls/" + url.getId())) {
+            String etag;
+            try (Response response = client.newCall(new Request.Builder().url(baseUrl + path).build()).execute()) {
+                assertEquals(200, response.code());
+                etag = response.header("ETag");
+                assertNotNull(etag);
+            }
+
+            Request revalidate = new Request.Builder()
+                    .url(baseUrl + path)
+                    .header("If-None-Match", etag)
+                    .build();
+            try (Response response = client.newCall(revalidate).execute()) {
+                assertEquals(304, response.code());
+                assertEquals("", response.body().string());
+            }
+
+            UrlRepository.saveCheck(url, checkOf(url, "Changed"));
+            try (Response response = client.newCall(revalidate).execute()) {
+                assertEquals(200, response.code());
+                assertFalse(etag.equals(response.header("ETag")));
+            }
+        }
+    }
+
+    @Test
+    public void testListingVersion() throws SQLException {
+        var initial = UrlRepository.findListingVersion();
+        assertEquals(2, UrlRepository.insertMissing(List.of("https://a.example.com", "https://b.example.com")));
+        var afterInsert = UrlRepository.findListingVersion();
+        assertFalse(initial.equals(afterInsert));
+
+        assertEquals(0, UrlRepository.insertMissing(List.of("https://a.example.com")));
+        assertEquals(afterInsert, UrlRepository.findListingVersion());
+
+        var url = UrlRepository.findByName("https://a.example.com").orElseThrow();
+        UrlRepository.saveCheck(url, checkOf(url, "Checked"));
+        assertFalse(afterInsert.equals(UrlRepository.findListingVersion()));
+    }
+
+    @Test
+    public void testUrlCheck() throws IOException, SQLException, InterruptedException {
         var url = new Url();
         url.setName(mockWebServer.url("/").toString().replaceAll("/$", ""));
         UrlRepository.save(url);
@@ -273,6 +449,7 @@ class TestClass {
         try (Response response = client.newCall(request).execute()) {
             assertEquals(302, response.code());
             assertEquals("/urls/" + url.getId(), response.header("Location"));
+            assertTrue(App.getCheckJobQueue().awaitIdle(Duration.ofSeconds(10)));
 
             List<UrlCheck> checks = UrlCheckRepository.findByUrlId(url.getId());
             assertEquals(1, checks.size());
@@ -300,7 +477,7 @@ class TestClass {
     }
 
     @Test
-    public void testFailedUrlCheck() throws IOException, SQLException {
+    public void testFailedUrlCheck() throws IOException, SQLException, InterruptedException {
         var url = new Url();
         url.setName("https://non-existent-domain-12345.com");
         UrlRepository.save(url);
@@ -313,6 +490,7 @@ class TestClass {
         try (Response response = client.newCall(request).execute()) {
             assertEquals(302, response.code());
             assertEquals("/urls/" + url.getId(), response.header("Location"));
+            assertTrue(App.getCheckJobQueue().awaitIdle(Duration.ofSeconds(10)));
 
             List<UrlCheck> checks = UrlCheckRepository.findByUrlId(url.getId());
             assertEquals(0, checks.size());
@@ -329,6 +507,818 @@ class TestClass {
         }
     }
 
+    @Test
+    public void testCheckJobStatus() throws IOException, SQLException, InterruptedException {
+        var url = new Url();
+        url.setName(mockWebServer.url("/").toString().replaceAll("/$", ""));
+        UrlRepository.save(url);
+
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(getMockHtml())
+                .addHeader("Content-Type", "text/html"));
+
+        var job = App.getCheckJobQueue().submit(url).orElseThrow();
+        assertTrue(App.getCheckJobQueue().awaitIdle(Duration.ofSeconds(10)));
+
+        Request request = new Request.Builder()
+                .url(baseUrl + "/checks/jobs/" + job.getId())
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            String body = response.body().string();
+            assertTrue(body.contains("\"status\":\"DONE\""));
+            assertTrue(body.contains("\"checkId\":" + UrlCheckRepository.findByUrlId(url.getId()).get(0).getId()));
+        }
+
+        Request missing = new Request.Builder()
+                .url(baseUrl + "/checks/jobs/unknown")
+                .build();
+
+        try (Response response = client.newCall(missing).execute()) {
+            assertEquals(404, response.code());
+        }
+    }
+
+    @Test
+    public void testCheckEvents() throws IOException, SQLException, InterruptedException {
+        var url = new Url();
+        url.setName(mockWebServer.url("/").toString().replaceAll("/$", ""));
+        UrlRepository.save(url);
+
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(getMockHtml())
+                .addHeader("Content-Type", "text/html"));
+
+        Request events = new Request.Builder()
+                .url(baseUrl + "/urls/" + url.getId() + "/events")
+                .build();
+
+        try (Response eventsResponse = client.newCall(events).execute()) {
+            assertEquals(200, eventsResponse.code());
+            assertTrue(eventsResponse.header("Content-Type").startsWith("text/event-stream"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (App.getCheckEvents().subscriberCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            Request check = new Request.Builder()
+                    .url(baseUrl + "/urls/" + url.getId() + "/checks")
+                    .header("Accept", "application/json")
+                    .post(new FormBody.Builder().build())
+                    .build();
+
+            try (Response response = client.newCall(check).execute()) {
+                assertEquals(202, response.code());
+                assertTrue(response.body().string().contains("\"urlId\":" + url.getId()));
+            }
+
+            var source = eventsResponse.body().source();
+            var received = new ArrayList<String>();
+            String completed = null;
+            String line;
+            while (completed == null && (line = source.readUtf8Line()) != null) {
+                if (line.startsWith("event: ")) {
+                    received.add(line.substring("event: ".length()));
+                } else if (line.startsWith("data: ") && received.contains("check-completed")) {
+                    completed = line.substring("data: ".length());
+                }
+            }
+            assertEquals(List.of("check-started", "check-completed"), received);
+            assertNotNull(completed);
+            assertTrue(completed.contains("\"title\":\"Test Page\""));
+            assertTrue(completed.contains("\"statusCode\":200"));
+        }
+    }
+
+    @Test
+    public void testCheckBulkhead() throws Exception {
+        var bulkhead = new Bulkhead(1, 1, Duration.ofSeconds(10), 7);
+        var release = new CountDownLatch(1);
+        var bulkheadApp = Javalin.create().post("/urls/{id}/checks", bulkhead.wrap(ctx -> {
+            release.await();
+            ctx.result("done");
+        }, UrlController::handleCheckRejected)).start(0);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var request = new Request.Builder()
+                    .url("http://localhost:" + bulkheadApp.port() + "/urls/1/checks")
+                    .post(new FormBody.Builder().build())
+                    .build();
+            Future<Integer> running = executor.submit(() -> {
+                try (Response response = client.newCall(request).execute()) {
+                    return response.code();
+                }
+            });
+            Future<Integer> queued = executor.submit(() -> {
+                try (Response response = client.newCall(request).execute()) {
+                    return response.code();
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while ((bulkhead.getActive() < 1 || bulkhead.getWaiting() < 1) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, bulkhead.getActive());
+            assertEquals(1, bulkhead.getWaiting());
+
+            var jsonRequest = request.newBuilder().header("Accept", "application/json").build();
+            try (Response response = client.newCall(jsonRequest).execute()) {
+                assertEquals(429, response.code());
+                assertEquals("7", response.header("Retry-After"));
+                assertTrue(response.body().string().contains("\"error\":\"Too many requests\""));
+            }
+            try (Response response = client.newCall(request).execute()) {
+                assertEquals(429, response.code());
+                assertEquals("7", response.header("Retry-After"));
+                assertEquals("/urls/1", response.header("Location"));
+                assertTrue(response.header("Content-Type").startsWith("text/html"));
+            }
+            assertEquals(2, bulkhead.getRejected());
+
+            release.countDown();
+            assertEquals(200, running.get(5, TimeUnit.SECONDS));
+            assertEquals(200, queued.get(5, TimeUnit.SECONDS));
+            assertEquals(0, bulkhead.getActive());
+            assertEquals(0, bulkhead.getWaiting());
+        } finally {
+            bulkheadApp.stop();
+        }
+    }
+
+    @Test
+    public void testDatabaseCheckQueue() throws SQLException, InterruptedException {
+        var reachable = new Url(mockWebServer.url("/").toString().replaceAll("/$", ""));
+        UrlRepository.save(reachable);
+        var unreachable = new Url("http://localhost:1");
+        UrlRepository.save(unreachable);
+
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(getMockHtml())
+                .addHeader("Content-Type", "text/html"));
+
+        var writeBuffer = new UrlCheckWriteBuffer(10, Duration.ofMillis(10));
+        var queue = new DatabaseCheckQueue(10, 2, 2, Duration.ofMinutes(1), Duration.ofMillis(10),
+                writeBuffer, new CheckEvents());
+        try {
+            var done = queue.submit(reachable).orElseThrow();
+            var failed = queue.submit(unreachable).orElseThrow();
+            assertTrue(queue.awaitIdle(Duration.ofSeconds(10)));
+
+            var doneJob = queue.findJob(done.getId()).orElseThrow();
+            assertEquals(CheckJob.Status.DONE, doneJob.getStatus());
+            assertEquals(1, doneJob.getAttempts());
+            assertEquals(UrlCheckRepository.findByUrlId(reachable.getId()).get(0).getId(), doneJob.getCheckId());
+
+            var failedJob = queue.findJob(failed.getId()).orElseThrow();
+            assertEquals(CheckJob.Status.FAILED, failedJob.getStatus());
+            assertEquals(2, failedJob.getAttempts());
+            assertNotNull(failedJob.getError());
+        } finally {
+            queue.shutdown();
+            writeBuffer.shutdown();
+        }
+    }
+
+    @Test
+    public void testCheckJobLease() throws SQLException, InterruptedException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+
+        assertTrue(CheckJobRepository.insert(new CheckJob(UUID.randomUUID().toString(), url), "instance", 1));
+        assertFalse(CheckJobRepository.insert(new CheckJob(UUID.randomUUID().toString(), url), "instance", 1));
+
+        var first = CheckJobRepository.claim(10, Duration.ZERO, 3);
+        assertEquals(1, first.size());
+        assertEquals(1, first.get(0).getAttempts());
+
+        Thread.sleep(5);
+        var second = CheckJobRepository.claim(10, Duration.ofMinutes(1), 3);
+        assertEquals(1, second.size());
+        assertEquals(first.get(0).getId(), second.get(0).getId());
+        assertEquals(2, second.get(0).getAttempts());
+        assertTrue(CheckJobRepository.claim(10, Duration.ofMinutes(1), 3).isEmpty());
+
+        assertFalse(CheckJobRepository.complete(first.get(0), 1));
+        assertTrue(CheckJobRepository.complete(second.get(0), 1));
+        assertEquals(CheckJob.Status.DONE, CheckJobRepository.findById(first.get(0).getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    public void testCheckJobCapacityUnderConcurrency() throws Exception {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+
+        // Without workers nothing is claimed, so the queued jobs stay queued
+        var writeBuffer = new UrlCheckWriteBuffer(10, Duration.ofMillis(10));
+        var queue = new DatabaseCheckQueue(5, 0, 1, Duration.ofMinutes(1), Duration.ofMillis(10),
+                writeBuffer, new CheckEvents());
+        var otherInstance = new DatabaseCheckQueue(5, 0, 1, Duration.ofMinutes(1), Duration.ofMillis(10),
+                writeBuffer, new CheckEvents());
+        var start = new CountDownLatch(1);
+        var inserts = new ArrayList<Future<Boolean>>();
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 32; i++) {
+                inserts.add(executor.submit(() -> {
+                    start.await();
+                    return queue.submit(url).isPresent();
+                }));
+            }
+            start.countDown();
+            int queued = 0;
+            for (var insert : inserts) {
+                queued += insert.get() ? 1 : 0;
+            }
+            assertEquals(5, queued);
+            assertTrue(otherInstance.submit(url).isPresent());
+            assertEquals(6, CheckJobRepository.countByStatus(CheckJob.Status.QUEUED));
+        } finally {
+            queue.shutdown();
+            otherInstance.shutdown();
+            writeBuffer.shutdown();
+        }
+    }
+
+    @Test
+    public void testMetricsEndpoint() throws IOException, SQLException, InterruptedException {
+        var url = new Url();
+        url.setName(mockWebServer.url("/").toString().replaceAll("/$", ""));
+        UrlRepository.save(url);
+
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(getMockHtml())
+                .addHeader("Content-Type", "text/html"));
+
+        App.getCheckJobQueue().submit(url).orElseThrow();
+        assertTrue(App.getCheckJobQueue().awaitIdle(Duration.ofSeconds(10)));
+
+        try (Response response = client.newCall(new Request.Builder().url(baseUrl + "/urls").build()).execute()) {
+            assertEquals(200, response.code());
+        }
+
+        Request request = new Request.Builder()
+                .url(baseUrl + "/metrics")
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            assertTrue(response.header("Content-Type").startsWith("text/plain"));
+            String body = response.body().string();
+            assertTrue(body.contains("http_server_request_duration_seconds_count{method=\"GET\",route=\"/urls\"}"));
+            assertTrue(body.contains("route=\"/metrics\""));
+            assertTrue(body.contains("route=\"/urls/{id}/events\""));
+            assertTrue(body.contains("hikaricp_connections_active{pool=\"db\"}"));
+            assertTrue(body.contains("hikaricp_connection_acquire_seconds_count{pool=\"db\"}"));
+            assertTrue(body.contains("hikaricp_connections_active{pool=\"db-reader\"}"));
+            assertTrue(body.contains("check_fetch_duration_seconds_count"));
+            assertTrue(body.contains("check_parse_duration_seconds_count"));
+            assertTrue(body.contains("check_persist_duration_seconds_count"));
+            assertTrue(body.contains("check_outcomes_total{outcome=\"ok\"}"));
+            assertTrue(body.contains("check_queue_size"));
+            assertTrue(body.contains("check_requests_active"));
+            assertTrue(body.contains("check_requests_rejected_total"));
+            assertTrue(body.contains("url_cache_hits_total"));
+        }
+    }
+
+    @Test
+    public void testScheduledCheckCycle() throws SQLException, InterruptedException {
+        String mockUrl = mockWebServer.url("/").toString().replaceAll("/$", "");
+        var first = new Url(mockUrl);
+        UrlRepository.save(first);
+        var second = new Url(mockUrl.replace("localhost", "127.0.0.1"));
+        UrlRepository.save(second);
+
+        for (int i = 0; i < 2; i++) {
+            mockWebServer.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody(getMockHtml())
+                    .addHeader("Content-Type", "text/html"));
+        }
+
+        var scheduler = new CheckScheduler(Duration.ofMinutes(1), Duration.ofSeconds(30), 1, 2);
+        assertEquals(2, scheduler.runCycle());
+
+        for (var url : List.of(first, second)) {
+            List<UrlCheck> checks = UrlCheckRepository.findByUrlId(url.getId());
+            assertEquals(1, checks.size());
+            assertEquals("Test Page", checks.get(0).getTitle());
+            assertEquals(checks.get(0).getCreatedAt().toEpochMilli(),
+                    UrlRepository.findById(url.getId()).orElseThrow().getLastCheckAt().toEpochMilli());
+        }
+    }
+
+    @Test
+    public void testScheduledCheckCycleWithDatabaseQueue() throws SQLException, InterruptedException {
+        String mockUrl = mockWebServer.url("/").toString().replaceAll("/$", "");
+        var first = new Url(mockUrl);
+        UrlRepository.save(first);
+        var second = new Url(mockUrl.replace("localhost", "127.0.0.1"));
+        UrlRepository.save(second);
+
+        for (int i = 0; i < 2; i++) {
+            mockWebServer.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody(getMockHtml())
+                    .addHeader("Content-Type", "text/html"));
+        }
+
+        var writeBuffer = new UrlCheckWriteBuffer(10, Duration.ofMillis(10));
+        var queue = new DatabaseCheckQueue(10, 2, 1, Duration.ofMinutes(1), Duration.ofMillis(10),
+                writeBuffer, new CheckEvents());
+        try {
+            var scheduler = new CheckScheduler(Duration.ofMinutes(10), Duration.ofSeconds(30), 1, queue);
+            var otherInstance = new CheckScheduler(Duration.ofMinutes(10), Duration.ofSeconds(30), 1, queue);
+            assertEquals(2, scheduler.runCycle());
+            assertEquals(0, otherInstance.runCycle());
+            assertTrue(queue.awaitIdle(Duration.ofSeconds(10)));
+
+            for (var url : List.of(first, second)) {
+                assertEquals(1, UrlCheckRepository.findByUrlId(url.getId()).size());
+            }
+            assertEquals(0, scheduler.runCycle());
+        } finally {
+            queue.shutdown();
+            writeBuffer.shutdown();
+        }
+    }
+
+    @Test
+    public void testConditionalCheck() throws IOException, SQLException, InterruptedException {
+        try (var server = new MockWebServer()) {
+            server.start();
+            var url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody(getMockHtml())
+                    .addHeader("Content-Type", "text/html")
+                    .addHeader("ETag", "\"v1\"")
+                    .addHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT"));
+            server.enqueue(new MockResponse()
+                    .setResponseCode(304)
+                    .addHeader("ETag", "\"v1\""));
+
+            var first = UrlChecker.check(url);
+            UrlCheckRepository.save(first);
+            assertEquals("\"v1\"", first.getEtag());
+            assertNull(server.takeRequest().getHeader("If-None-Match"));
+
+            long revalidated = Metrics.getCheckOutcomeCount("revalidated");
+            var second = UrlChecker.check(url);
+            UrlCheckRepository.save(second);
+
+            var request = server.takeRequest();
+            assertEquals("\"v1\"", request.getHeader("If-None-Match"));
+            assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", request.getHeader("If-Modified-Since"));
+
+            var stored = UrlCheckRepository.findById(second.getId()).orElseThrow();
+            assertEquals(200, stored.getStatusCode());
+            assertEquals("Test Page", stored.getTitle());
+            assertEquals("Test Header", stored.getH1());
+            assertEquals("Test description", stored.getDescription());
+            assertEquals("\"v1\"", stored.getEtag());
+            assertEquals(revalidated + 1, Metrics.getCheckOutcomeCount("revalidated"));
+        }
+    }
+
+    @Test
+    public void testCheckTotalTimeout() throws IOException, SQLException {
+        try (var server = new MockWebServer()) {
+            server.start();
+            var url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            // About 12 seconds to send in full
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody(getMockHtml().repeat(4))
+                    .addHeader("Content-Type", "text/html")
+                    .throttleBody(16, 200, TimeUnit.MILLISECONDS));
+
+            UrlChecker.setTotalTimeout(Duration.ofMillis(300));
+            try {
+                long start = System.nanoTime();
+                assertThrows(RuntimeException.class, () -> UrlChecker.check(url));
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            } finally {
+                UrlChecker.setTotalTimeout(Duration.ofSeconds(30));
+            }
+        }
+    }
+
+    @Test
+    public void testCheckReusesConnection() throws IOException, SQLException, InterruptedException {
+        try (var server = new MockWebServer()) {
+            server.start();
+            var url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            var page = getMockHtml().replace("<p>Test paragraph</p>", "<p>" + "text ".repeat(1000) + "</p>");
+            for (int i = 0; i < 2; i++) {
+                server.enqueue(new MockResponse()
+                        .setResponseCode(200)
+                        .setBody(page)
+                        .addHeader("Content-Type", "text/html"));
+            }
+
+            assertEquals("Test Header", UrlChecker.check(url).getH1());
+            assertEquals("Test Header", UrlChecker.check(url).getH1());
+            assertEquals(0, server.takeRequest().getSequenceNumber());
+            assertEquals(1, server.takeRequest().getSequenceNumber());
+        }
+    }
+
+    @Test
+    public void testNonHtmlCheck() throws IOException, SQLException {
+        try (var server = new MockWebServer()) {
+            server.start();
+            var url = new Url(server.url("/").toString().replaceAll("/$", ""));
+            UrlRepository.save(url);
+
+            server.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody(new okio.Buffer().write(new byte[4 * 1024 * 1024]))
+                    .addHeader("Content-Type", "application/pdf"));
+
+            var check = UrlChecker.check(url);
+            assertEquals(200, check.getStatusCode());
+            assertEquals("", check.getTitle());
+            assertEquals("", check.getH1());
+            assertEquals("", check.getDescription());
+        }
+    }
+
+    @Test
+    public void testUnchangedCheckContentIsShared() throws SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+
+        UrlCheckRepository.save(checkOf(url, "Same"));
+        UrlCheckRepository.saveAll(List.of(checkOf(url, "Same"), checkOf(url, "Changed")));
+        var withoutDescription = new UrlCheck(200, "Changed", "h1", null);
+        withoutDescription.setUrlId(url.getId());
+        UrlCheckRepository.save(withoutDescription);
+
+        List<UrlCheck> checks = UrlCheckRepository.findByUrlId(url.getId());
+        assertEquals(4, checks.size());
+        assertEquals(List.of("Changed", "Changed", "Same", "Same"),
+                checks.stream().map(UrlCheck::getTitle).toList());
+        assertNull(checks.get(0).getDescription());
+        assertNotNull(checks.get(1).getDescription());
+        assertEquals(checks.get(2).getDescription(), checks.get(3).getDescription());
+
+        try (var conn = hexlet.code.BaseRepository.dataSource.getConnection();
+             var statement = conn.createStatement()) {
+            var resultSet = statement.executeQuery("SELECT COUNT(*) FROM check_contents");
+            resultSet.next();
+            assertEquals(3, resultSet.getInt(1));
+        }
+    }
+
+    @Test
+    public void testLongTitleIsCutAtCharacterBoundary() throws SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+
+        UrlCheckRepository.save(checkOf(url, "a".repeat(254) + "\uD83D\uDE00" + "b"));
+
+        var title = UrlCheckRepository.findByUrlId(url.getId()).get(0).getTitle();
+        assertEquals("a".repeat(254), title);
+    }
+
+    @Test
+    public void testCheckRetention() throws SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+
+        var oldDay = LocalDate.now(ZoneOffset.UTC).minusDays(100);
+        var statuses = List.of(200, 404, 500);
+        var titles = List.of("A", "B", "A");
+        for (int i = 0; i < 3; i++) {
+            var check = new UrlCheck(statuses.get(i), titles.get(i), "h1", "description");
+            check.setUrlId(url.getId());
+            check.setCreatedAt(oldDay.atTime(12, i).toInstant(ZoneOffset.UTC));
+            UrlCheckRepository.save(check);
+        }
+        UrlCheckRepository.save(checkOf(url, "Now"));
+
+        var retention = new CheckRetention(Duration.ofDays(90), Duration.ofMinutes(1), 2);
+        assertEquals(3, retention.run());
+        assertEquals(0, retention.run());
+
+        List<UrlCheck> raw = UrlCheckRepository.findByUrlId(url.getId());
+        assertEquals(1, raw.size());
+        assertEquals("Now", raw.get(0).getTitle());
+        assertEquals("Now", UrlRepository.findById(url.getId()).orElseThrow().getTitle());
+
+        var history = UrlCheckRepository.findDailyHistory(url.getId(), oldDay.minusDays(1));
+        assertEquals(2, history.size());
+        var rolledUp = history.get(0);
+        assertEquals(oldDay, rolledUp.getDay());
+        assertEquals(3, rolledUp.getCheckCount());
+        assertEquals(1, rolledUp.getStatus2xx());
+        assertEquals(1, rolledUp.getStatus4xx());
+        assertEquals(1, rolledUp.getStatus5xx());
+        assertEquals("A", rolledUp.getFirstTitle());
+        assertEquals("A", rolledUp.getLastTitle());
+        assertEquals(2, rolledUp.getTitleChanges());
+        assertEquals(1, history.get(1).getCheckCount());
+        assertEquals("Now", history.get(1).getLastTitle());
+
+        try (var conn = hexlet.code.BaseRepository.dataSource.getConnection();
+             var statement = conn.createStatement()) {
+            var resultSet = statement.executeQuery("SELECT COUNT(*) FROM check_contents");
+            resultSet.next();
+            assertEquals(1, resultSet.getInt(1));
+        }
+    }
+
+    @Test
+    public void testUrlsApi() throws IOException, SQLException {
+        var ids = new ArrayList<Integer>();
+        for (int i = 1; i <= 3; i++) {
+            var url = new Url("https://site" + i + ".example.com");
+            UrlRepository.save(url);
+            ids.add(url.getId());
+        }
+
+        Request firstPage = new Request.Builder()
+                .url(baseUrl + "/api/urls?limit=2&fields=id,name")
+                .build();
+
+        try (Response response = client.newCall(firstPage).execute()) {
+            assertEquals(200, response.code());
+            assertTrue(response.header("Content-Type").startsWith("application/json"));
+            String body = response.body().string();
+            assertEquals("{\"items\":[{\"id\":" + ids.get(0) + ",\"name\":\"https://site1.example.com\"},"
+                    + "{\"id\":" + ids.get(1) + ",\"name\":\"https://site2.example.com\"}],"
+                    + "\"nextCursor\":" + ids.get(1) + "}", body);
+        }
+
+        Request lastPage = new Request.Builder()
+                .url(baseUrl + "/api/urls?limit=2&after=" + ids.get(1))
+                .build();
+
+        try (Response response = client.newCall(lastPage).execute()) {
+            String body = response.body().string();
+            assertTrue(body.contains("https://site3.example.com"));
+            assertTrue(body.contains("\"statusCode\":null"));
+            assertTrue(body.endsWith("\"nextCursor\":null}"));
+        }
+
+        Request unknownField = new Request.Builder()
+                .url(baseUrl + "/api/urls?fields=id,secret")
+                .build();
+
+        try (Response response = client.newCall(unknownField).execute()) {
+            assertEquals(400, response.code());
+        }
+    }
+
+    @Test
+    public void testUrlChecksApi() throws IOException, SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+        UrlCheckRepository.saveAll(List.of(checkOf(url, "First"), checkOf(url, "Second")));
+
+        Request request = new Request.Builder()
+                .url(baseUrl + "/api/urls/" + url.getId() + "/checks?fields=title,statusCode")
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            assertEquals("{\"items\":[{\"statusCode\":200,\"title\":\"First\"},"
+                    + "{\"statusCode\":200,\"title\":\"Second\"}],\"nextCursor\":null}",
+                    response.body().string());
+        }
+
+        Request missing = new Request.Builder()
+                .url(baseUrl + "/api/urls/999999/checks")
+                .build();
+
+        try (Response response = client.newCall(missing).execute()) {
+            assertEquals(404, response.code());
+        }
+    }
+
+    @Test
+    public void testUrlHistoryApi() throws IOException, SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+        UrlCheckRepository.saveAll(List.of(checkOf(url, "First"), checkOf(url, "Second")));
+        var today = LocalDate.now(ZoneOffset.UTC);
+
+        Request request = new Request.Builder()
+                .url(baseUrl + "/api/urls/" + url.getId() + "/history?fields=day,checkCount,lastTitle,titleChanges")
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            assertEquals("{\"items\":[{\"day\":\"" + today + "\",\"checkCount\":2,\"lastTitle\":\"Second\","
+                    + "\"titleChanges\":1}]}", response.body().string());
+        }
+
+        Request future = new Request.Builder()
+                .url(baseUrl + "/api/urls/" + url.getId() + "/history?from=" + today.plusDays(1))
+                .build();
+
+        try (Response response = client.newCall(future).execute()) {
+            assertEquals("{\"items\":[]}", response.body().string());
+        }
+
+        Request badDate = new Request.Builder()
+                .url(baseUrl + "/api/urls/" + url.getId() + "/history?from=yesterday")
+                .build();
+
+        try (Response response = client.newCall(badDate).execute()) {
+            assertEquals(400, response.code());
+        }
+
+        Request missing = new Request.Builder()
+                .url(baseUrl + "/api/urls/999999/history")
+                .build();
+
+        try (Response response = client.newCall(missing).execute()) {
+            assertEquals(404, response.code());
+        }
+    }
+
+    @Test
+    public void testCheckHistoryPagination() throws IOException, SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+        for (int i = 1; i <= 3; i++) {
+            UrlRepository.saveCheck(url, new UrlCheck(200, "Title " + i, "h1", "description"));
+        }
+
+        var newest = UrlRepository.findByIdWithChecks(url.getId(), null, 2).orElseThrow();
+        assertEquals(2, newest.getChecks().size());
+        assertEquals("Title 3", newest.getChecks().get(0).getTitle());
+        assertNotNull(newest.getOlderChecksCursor());
+
+        var older = UrlRepository.findByIdWithChecks(url.getId(), newest.getOlderChecksCursor(), 2).orElseThrow();
+        assertEquals(1, older.getChecks().size());
+        assertEquals("Title 1", older.getChecks().get(0).getTitle());
+        assertNull(older.getOlderChecksCursor());
+
+        Request request = new Request.Builder()
+                .url(baseUrl + "/urls/" + url.getId() + "?size=2")
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            String body = response.body().string();
+            assertTrue(body.contains("Title 3"));
+            assertFalse(body.contains("Title 1"));
+            assertTrue(body.contains("?before=" + newest.getOlderChecksCursor() + "&size=2"));
+        }
+    }
+
+    @Test
+    public void testReadReplicaRouting() throws SQLException {
+        var url = new Url("https://replica.example.com");
+        UrlRepository.save(url);
+        UrlRepository.clearCache();
+
+        var reader = BaseRepository.readDataSource;
+        var config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:replica");
+        try (var replica = new HikariDataSource(config)) {
+            try (var conn = replica.getConnection();
+                 var statement = conn.createStatement()) {
+                statement.execute("RUNSCRIPT FROM 'classpath:/schema.sql'");
+            }
+            BaseRepository.readDataSource = replica;
+            BaseRepository.readFromReplica = true;
+
+            assertTrue(UrlRepository.getAll().isEmpty());
+            assertEquals(url.getId(), UrlRepository.findById(url.getId()).orElseThrow().getId());
+
+            replica.close();
+            assertEquals(1, UrlRepository.getAll().size());
+        } finally {
+            BaseRepository.readDataSource = reader;
+            BaseRepository.readFromReplica = false;
+        }
+    }
+
+    @Test
+    public void testUrlCache() throws SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+        var before = UrlRepository.getCacheStats();
+
+        var byName = UrlRepository.findByName("https://example.com").orElseThrow();
+        var byId = UrlRepository.findById(url.getId()).orElseThrow();
+        assertEquals(url.getId(), byName.getId());
+        assertEquals(url.getId(), byId.getId());
+        assertEquals(before.hits() + 2, UrlRepository.getCacheStats().hits());
+
+        byId.setName("mutated");
+        assertEquals("https://example.com", UrlRepository.findById(url.getId()).orElseThrow().getName());
+
+        UrlRepository.saveCheck(url, new UrlCheck(200, "Cached", "h1", "description"));
+        assertEquals("Cached", UrlRepository.findById(url.getId()).orElseThrow().getTitle());
+
+        var check = new UrlCheck(500, "Updated", "h1", "description");
+        check.setUrlId(url.getId());
+        UrlCheckRepository.save(check);
+        assertEquals(500, UrlRepository.findById(url.getId()).orElseThrow().getStatusCode());
+
+        UrlRepository.clearCache();
+        var misses = UrlRepository.getCacheStats().misses();
+        assertEquals("Updated", UrlRepository.findById(url.getId()).orElseThrow().getTitle());
+        assertEquals(misses + 1, UrlRepository.getCacheStats().misses());
+    }
+
+    @Test
+    public void testUrlCacheEviction() {
+        var cache = new UrlCache(2);
+        for (int i = 1; i <= 3; i++) {
+            var url = new Url("https://example" + i + ".com");
+            url.setId(i);
+            cache.put(url);
+        }
+
+        assertTrue(cache.getById(1).isEmpty());
+        assertTrue(cache.getByName("https://example1.com").isEmpty());
+        assertTrue(cache.getByName("https://example3.com").isPresent());
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(2, cache.stats().size());
+    }
+
+    @Test
+    public void testBufferedCheckWrites() throws SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+
+        var buffer = new UrlCheckWriteBuffer(2, Duration.ofMinutes(1));
+        var first = buffer.add(checkOf(url, "First"));
+        assertFalse(first.isDone());
+
+        var second = buffer.add(checkOf(url, "Second"));
+        assertTrue(first.isDone());
+        assertTrue(second.join().getId() > first.join().getId());
+
+        var third = buffer.add(checkOf(url, "Third"));
+        buffer.shutdown();
+        assertTrue(third.isDone());
+
+        var checks = UrlCheckRepository.findByUrlId(url.getId());
+        assertEquals(3, checks.size());
+        assertEquals(third.join().getId(), checks.get(0).getId());
+        assertEquals("Third", UrlRepository.findById(url.getId()).orElseThrow().getTitle());
+    }
+
+    @Test
+    public void testFailedCheckDoesNotFailItsBatch() throws SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+        var missing = new Url("https://missing.example.com");
+        missing.setId(Integer.MAX_VALUE);
+
+        var buffer = new UrlCheckWriteBuffer(3, Duration.ofMinutes(1));
+        var good = buffer.add(checkOf(url, "T".repeat(300)));
+        var bad = buffer.add(checkOf(missing, "Missing"));
+        var other = buffer.add(checkOf(url, "Other"));
+
+        assertTrue(bad.isCompletedExceptionally());
+        assertEquals(255, good.join().getTitle().length());
+        assertTrue(other.join().getId() > 0);
+        assertEquals(2, UrlCheckRepository.findByUrlId(url.getId()).size());
+        buffer.shutdown();
+    }
+
+    @Test
+    public void testLatestCheckPointer() throws SQLException {
+        var url = new Url("https://example.com");
+        UrlRepository.save(url);
+        assertFalse(UrlRepository.findByName("https://example.com").orElseThrow().hasBeenChecked());
+
+        UrlRepository.saveCheck(url, new UrlCheck(200, "First", "h1", "description"));
+        var latest = new UrlCheck(404, "Second", "h1", "description");
+        latest.setUrlId(url.getId());
+        UrlCheckRepository.save(latest);
+
+        var found = UrlRepository.findById(url.getId()).orElseThrow();
+        assertEquals(404, found.getStatusCode());
+        assertEquals("Second", found.getTitle());
+        assertEquals(latest.getId(), UrlCheckRepository.findLatestChecks().get((long) url.getId()).getId());
+        assertEquals(404, UrlRepository.getAll().get(0).getStatusCode());
+    }
+
+    private static UrlCheck checkOf(Url url, String title) {
+        var check = new UrlCheck(200, title, "h1", "description");
+        check.setUrlId(url.getId());
+        return check;
+    }
+
     private String getMockHtml() {
         return """
                 <!DOCTYPE html>
@@ -0,0 +1,100 @@
+package hexlet.code;
+
+import hexlet.code.check.CheckHttpClient;
+import hexlet.code.check.UrlChecker;
+import hexlet.code.model.Url;
+import hexlet.code.repository.UrlRepository;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares request concurrency with platform and virtual request threads when every request
+ * waits on a slow site. Run with {@code ./gradlew loadTest}; it is excluded from {@code test}.
+ * Each mode runs in its own application, stopped with its pools and workers before the next starts.
+ */
+@Tag("load")
+class VirtualThreadLoadTest {
+    private static final int REQUESTS = 400;
+    private static final long SITE_DELAY_MILLIS = 1000;
+
+    @Test
+    void testVirtualThreadsServeMoreSlowRequestsAtOnce() throws Exception {
+        try (var site = new MockWebServer()) {
+            site.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    return new MockResponse()
+                            .setResponseCode(200)
+                            .setBody("<html><head><title>Slow</title></head><body></body></html>")
+                            .addHeader("Content-Type", "text/html")
+                            .setHeadersDelay(SITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            });
+            site.start();
+
+            long platformMillis = run(false, site);
+            // The first application must be gone, so the second one starts from a fresh database
+            assertTrue(BaseRepository.dataSource.isClosed() && BaseRepository.readDataSource.isClosed());
+            long virtualMillis = run(true, site);
+            assertTrue(virtualMillis < platformMillis * 3 / 4, String.format(
+                    "%d requests to a site answering in %d ms: platform threads %d ms, virtual threads %d ms",
+                    REQUESTS, SITE_DELAY_MILLIS, platformMillis, virtualMillis));
+        }
+    }
+
+    /**
+     * Starts the application, sends all requests at once to a route that checks the slow site
+     * in the handler and returns the time until every response arrived.
+     */
+    private static long run(boolean virtualThreads, MockWebServer site) throws IOException {
+        var app = App.getApp(virtualThreads);
+        var httpClient = CheckHttpClient.create(Duration.ofSeconds(5), Duration.ofSeconds(30), REQUESTS, REQUESTS);
+        UrlChecker.setHttpClient(httpClient);
+
+        var url = new Url(site.url("/").toString().replaceAll("/$", ""));
+        UrlRepository.save(url);
+        app.get("/load", ctx -> ctx.result(String.valueOf(UrlChecker.check(url).getStatusCode())));
+        app.start(0);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .executor(executor)
+                    .build();
+            var request = HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + "/load"))
+                    .timeout(Duration.ofSeconds(60))
+                    .build();
+
+            long start = System.nanoTime();
+            var responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+            for (int i = 0; i < REQUESTS; i++) {
+                responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+            }
+            for (var response : responses) {
+                assertEquals("200", response.join().body());
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            app.stop();
+            httpClient.shutDown();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package hexlet.code.check;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HtmlMetaExtractorTest {
+    private static final long MAX_BYTES = 1024 * 1024;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        """
+            <!DOCTYPE html>
+            <html>
+            <head>
+                <title>Test Page</title>
+                <meta name="description" content="Test description">
+            </head>
+            <body>
+                <h1>Test Header</h1>
+                <p>Test paragraph</p>
+            </body>
+            </html>
+            """,
+        "<html><head><title>  Spaced \n  title </title></head>"
+            + "<body><h1>Nested <b>bold</b> &amp; text</h1></body></html>",
+        "<html><body><h1>Only h1</h1><h1>Second</h1></body></html>",
+        "<title>No head &lt;tag&gt;</title><meta name=description content='Quoted &quot;value&quot;'>",
+        "<html><head><meta name=\"keywords\" content=\"k\"></head><body><p>Nothing</p></body></html>",
+        "<body><title>Title in body</title><h1></h1></body>",
+        ""
+    })
+    public void testMatchesJsoupDocument(String html) throws IOException {
+        var result = extract(html.getBytes(StandardCharsets.UTF_8), "text/html", MAX_BYTES);
+        Document document = Jsoup.parse(html);
+
+        assertEquals(document.title(), result.title());
+
+        var h1Element = document.selectFirst("h1");
+        assertEquals(h1Element != null ? h1Element.text() : "", result.h1());
+
+        var metaDescription = document.selectFirst("meta[name=description]");
+        assertEquals(metaDescription != null ? metaDescription.attr("content") : "", result.description());
+    }
+
+    @Test
+    public void testStopsAtByteCap() throws IOException {
+        var html = "<html><head><title>Capped</title></head><body>" + "<p>filler</p>".repeat(1000)
+                + "<h1>Too far</h1></body></html>";
+
+        var result = extract(html.getBytes(StandardCharsets.UTF_8), "text/html", 1024);
+
+        assertEquals("Capped", result.title());
+        assertEquals("", result.h1());
+    }
+
+    @Test
+    public void testUsesCharsetFromHeader() throws IOException {
+        var charset = Charset.forName("windows-1251");
+        var html = "<html><head><title>Анализатор</title></head><body><h1>Сайты</h1></body></html>";
+
+        var result = extract(html.getBytes(charset), "text/html; charset=windows-1251", MAX_BYTES);
+
+        assertEquals("Анализатор", result.title());
+        assertEquals("Сайты", result.h1());
+    }
+
+    @Test
+    public void testUsesCharsetFromMetaTag() throws IOException {
+        var charset = Charset.forName("windows-1251");
+        var html = "<html><head><meta charset=\"windows-1251\"><title>Анализатор</title></head></html>";
+
+        var result = extract(html.getBytes(charset), "text/html", MAX_BYTES);
+
+        assertEquals("Анализатор", result.title());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"text/html", "text/html; charset=utf-8", " TEXT/HTML ", "application/xhtml+xml", ""})
+    public void testRecognizesHtml(String contentType) {
+        assertTrue(HtmlMetaExtractor.isHtml(contentType));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"application/pdf", "image/png", "application/octet-stream", "text/plain; charset=utf-8"})
+    public void testRejectsNonHtml(String contentType) {
+        assertFalse(HtmlMetaExtractor.isHtml(contentType));
+    }
+
+    private static HtmlMetaExtractor.Result extract(byte[] body, String contentType, long maxBytes)
+            throws IOException {
+        try (var input = new ByteArrayInputStream(body)) {
+            return HtmlMetaExtractor.extract(input, contentType, maxBytes);
+        }
+    }
+}